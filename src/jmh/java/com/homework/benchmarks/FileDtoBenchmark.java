@@ -0,0 +1,81 @@
+package com.homework.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.homework.dto.AllFilesResponseDto;
+import com.homework.dto.FileDto;
+import com.homework.model.File;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Listing page mapped from entities and written to / read from JSON, as the listing endpoint does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileDtoBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private List<File> files;
+
+    private AllFilesResponseDto response;
+
+    private byte[] json;
+
+    private ObjectWriter writer;
+
+    private ObjectReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        files = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            files.add(new File(UUID.randomUUID().toString(), "file-" + i + ".mp3", i + 1, List.of("audio", "work")));
+        }
+
+        var mapper = new ObjectMapper();
+        writer = mapper.writerFor(AllFilesResponseDto.class);
+        reader = mapper.readerFor(AllFilesResponseDto.class);
+        response = mapPage();
+        json = writer.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public AllFilesResponseDto mapPage() {
+        var page = files.stream().map(FileDto::fromEntity).collect(Collectors.toList());
+        return new AllFilesResponseDto(files.size(), page);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        return writer.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public AllFilesResponseDto deserializePage() throws IOException {
+        return reader.readValue(json);
+    }
+}
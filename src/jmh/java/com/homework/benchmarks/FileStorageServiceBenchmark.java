@@ -0,0 +1,82 @@
+package com.homework.benchmarks;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.dto.FileCreateDto;
+import com.homework.exceptions.NotFoundException;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.repository.FileContentStore;
+import com.homework.service.FileQueryCache;
+import com.homework.service.FileStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.Validation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service paths with a stubbed repository: tag derivation on upload, validation and chunking of bulk
+ * uploads, and the tag updates. Tag sets of the updates are merged by Elasticsearch scripts, so only
+ * the service side of them is measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileStorageServiceBenchmark {
+
+    private static final List<String> TAGS = List.of("work", "draft");
+
+    private FileStorageService service;
+
+    private FileCreateDto upload;
+
+    private List<FileCreateDto> bulk;
+
+    @Setup
+    public void setUp() {
+        var properties = new FileStorageProperties();
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(StubFileStorageRepo.create(), properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(), new FileContentStore(properties), Optional.empty());
+
+        upload = new FileCreateDto("Quarterly Report 2020.pdf", 123, TAGS);
+        bulk = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            bulk.add(new FileCreateDto("file-" + i + (i % 2 == 0 ? ".mp3" : ".unknown"), i + 1, TAGS));
+        }
+    }
+
+    @Benchmark
+    public Object upload() {
+        return service.upload(upload);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object bulkUpload() {
+        return service.bulkUpload(bulk.iterator());
+    }
+
+    @Benchmark
+    public void assignTags() throws NotFoundException {
+        service.assignTags("id", TAGS);
+    }
+
+    @Benchmark
+    public void deleteTags() throws NotFoundException {
+        service.deleteTags("id", TAGS);
+    }
+}
@@ -0,0 +1,89 @@
+package com.homework.benchmarks;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.extensions.AudioType;
+import com.homework.extensions.DocType;
+import com.homework.extensions.FileType;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.extensions.ImageType;
+import com.homework.extensions.VideoType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type tag of a mix of upload names: the registry against the enum scans it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileTypeBenchmark {
+
+    private static final String[] NAMES = {
+            "song.mp3", "Quarterly Report 2020.PDF", "clip.mkv", "photo.JPG",
+            "image.png", "archive.zip", "README", "notes.txt"
+    };
+
+    private FileTypeRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new FileTypeRegistry(new FileStorageProperties());
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) {
+        for (String name : NAMES) blackhole.consume(registry.classify(name));
+    }
+
+    @Benchmark
+    public void enumScan(Blackhole blackhole) {
+        for (String name : NAMES) {
+            var type = extension(name).map(FileTypeBenchmark::fileType).map(FileType::getType).orElse(null);
+            blackhole.consume(type);
+        }
+    }
+
+    // Classification of FileStorageService before the registry
+
+    private static Optional<String> extension(String fileName) {
+        return Optional.ofNullable(fileName)
+                .filter(f -> f.contains("."))
+                .map(f -> f.substring(fileName.lastIndexOf(".") + 1));
+    }
+
+    private static FileType fileType(String extension) {
+        if (Arrays.stream(AudioType.values())
+                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
+            return AudioType.valueOf(extension.toUpperCase());
+
+        if (Arrays.stream(DocType.values()).
+                anyMatch(type -> type.toString().equals(extension.toUpperCase())))
+            return DocType.valueOf(extension.toUpperCase());
+
+        if (Arrays.stream(VideoType.values())
+                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
+            return VideoType.valueOf(extension.toUpperCase());
+
+        if (Arrays.stream(ImageType.values())
+                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
+            return ImageType.valueOf(extension.toUpperCase());
+
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package com.homework.benchmarks;
+
+import com.homework.repository.FileStorageRepo;
+import org.elasticsearch.action.DocWriteResponse;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Repository answering without Elasticsearch, so benchmarks measure only the service around it.
+ */
+final class StubFileStorageRepo {
+
+    private StubFileStorageRepo() {
+    }
+
+    static FileStorageRepo create() {
+        return (FileStorageRepo) Proxy.newProxyInstance(
+                FileStorageRepo.class.getClassLoader(),
+                new Class<?>[]{FileStorageRepo.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "save":
+                            return args[0];
+                        case "bulkSave":
+                            return Map.of();
+                        case "addTags":
+                        case "removeTags":
+                            return DocWriteResponse.Result.UPDATED;
+                        case "deleteFile":
+                            return DocWriteResponse.Result.DELETED;
+                        case "existsById":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,73 @@
+package com.homework.loadtest;
+
+import com.homework.HomeworkApplication;
+import org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.nio.file.Files;
+import java.time.Duration;
+
+import static org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner.newConfigs;
+
+/**
+ * Starts an embedded Elasticsearch node and the application on a random port, drives a mixed workload
+ * against the HTTP endpoints and prints latency percentiles and throughput per endpoint.
+ * Exits with 1 if any request failed or a p99 is above loadtest.max-p99-ms, so it could gate a build.
+ *
+ * <pre>
+ * mvn -P loadtest test-compile exec:exec -Dloadtest.users=16 -Dloadtest.duration=60s
+ * </pre>
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        var users = Integer.getInteger("loadtest.users", 8);
+        var warmup = Duration.parse("PT" + System.getProperty("loadtest.warmup", "10s"));
+        var duration = Duration.parse("PT" + System.getProperty("loadtest.duration", "30s"));
+        var seedFiles = Integer.getInteger("loadtest.seed-files", 5000);
+        var mix = System.getProperty("loadtest.mix", Workload.DEFAULT_MIX);
+        var maxP99Millis = Long.getLong("loadtest.max-p99-ms", Long.MAX_VALUE);
+        var embedded = Boolean.parseBoolean(System.getProperty("loadtest.embedded-elasticsearch", "true"));
+        var elasticsearchPort = Integer.getInteger("loadtest.elasticsearch-port", 9250);
+
+        ElasticsearchClusterRunner elasticsearch = null;
+        if (embedded) {
+            // Node 1 listens on the base port + 1
+            elasticsearch = new ElasticsearchClusterRunner();
+            elasticsearch.build(newConfigs()
+                    .numOfNode(1)
+                    .baseHttpPort(elasticsearchPort - 1)
+                    .basePath(Files.createTempDirectory("loadtest-es").toString())
+                    .clusterName("loadtest"));
+            elasticsearch.ensureYellow();
+        }
+
+        var builder = new SpringApplicationBuilder(HomeworkApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN");
+        if (embedded) builder.properties("file-storage.elasticsearch.hosts=localhost:" + elasticsearchPort);
+        var application = builder.run(args);
+        var port = application.getEnvironment().getProperty("local.server.port", Integer.class);
+
+        boolean passed;
+        try {
+            var workload = new Workload("http://localhost:" + port, mix);
+            System.out.printf("Seeding %d files%n", seedFiles);
+            workload.seed(seedFiles);
+
+            System.out.printf("Warming up %d users for %s%n", users, warmup);
+            workload.run(users, warmup);
+            workload.reset();
+
+            System.out.printf("Measuring %d users for %s%n", users, duration);
+            workload.run(users, duration);
+            passed = workload.report(duration, maxP99Millis, System.out);
+        } finally {
+            application.close();
+            if (elasticsearch != null) {
+                elasticsearch.close();
+                elasticsearch.clean();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
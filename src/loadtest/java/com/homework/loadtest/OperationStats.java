@@ -0,0 +1,72 @@
+package com.homework.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of one operation, recorded by all users without locking.
+ */
+class OperationStats {
+
+    static final String HEADER = String.format("%-8s %9s %7s %9s %9s %9s %9s %9s %9s",
+            "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+
+    private final LongAdder errors = new LongAdder();
+
+    private Recorder recorder = new Recorder(MAX_LATENCY, 3);
+
+    private Histogram histogram;
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, boolean success) {
+        recorder.recordValue(Math.min(nanos, MAX_LATENCY));
+        if (!success) errors.increment();
+    }
+
+    void reset() {
+        recorder = new Recorder(MAX_LATENCY, 3);
+        histogram = null;
+        errors.reset();
+    }
+
+    long count() {
+        return histogram().getTotalCount();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    long p99Millis() {
+        return TimeUnit.NANOSECONDS.toMillis(histogram().getValueAtPercentile(99));
+    }
+
+    String format(Duration duration) {
+        var h = histogram();
+        return String.format("%-8s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                name, h.getTotalCount(), errors(), h.getTotalCount() / (duration.toNanos() / 1e9),
+                millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+    }
+
+    // Recorder hands out the interval once, so it is kept for all the figures of the report
+    private Histogram histogram() {
+        if (histogram == null) histogram = recorder.getIntervalHistogram();
+        return histogram;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
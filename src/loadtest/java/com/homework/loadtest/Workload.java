@@ -0,0 +1,218 @@
+package com.homework.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Mix of the requests of api.http, picked at random by weight by every user in a closed loop.
+ */
+class Workload {
+
+    // Weights of the operations, as name:weight pairs
+    static final String DEFAULT_MIX = "upload:15,bulk:2,assign:15,remove:8,list:35,search:15,tags:5,export:0";
+
+    private static final int KNOWN_IDS = 100_000;
+
+    private static final int BULK_SIZE = 50;
+
+    private static final List<String> TAGS = List.of("red", "green", "blue", "urgent", "archive");
+
+    // Type tags added on upload and the random ones
+    private static final List<String> LIST_TAGS = List.of("document", "audio", "image", "video", "red", "urgent");
+
+    private static final List<String> WORDS = List.of("report", "invoice", "photo", "track", "draft", "backup");
+
+    private static final List<String> EXTENSIONS = List.of("pdf", "mp3", "png", "avi", "txt", "bin");
+
+    private final String baseUrl;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+
+    private final List<String> mix = new ArrayList<>();
+
+    // Ring of ids returned by uploads, tag requests pick a file from it
+    private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(KNOWN_IDS);
+
+    private final AtomicLong uploaded = new AtomicLong();
+
+    Workload(String baseUrl, String mix) {
+        this.baseUrl = baseUrl;
+        for (String entry : mix.split(",")) {
+            var pair = entry.trim().split(":");
+            stats.put(pair[0], new OperationStats(pair[0]));
+            for (int i = 0; i < Integer.parseInt(pair[1]); i++) this.mix.add(pair[0]);
+        }
+    }
+
+    void seed(int files) throws IOException, InterruptedException {
+        for (int i = 0; i < files; i += BULK_SIZE) bulk();
+    }
+
+    void run(int users, Duration duration) throws InterruptedException {
+        var deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        for (int i = 0; i < users; i++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) execute(mix.get(ThreadLocalRandom.current().nextInt(mix.size())));
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+    }
+
+    void reset() {
+        stats.values().forEach(OperationStats::reset);
+    }
+
+    boolean report(Duration duration, long maxP99Millis, PrintStream out) {
+        out.println(OperationStats.HEADER);
+        boolean passed = true;
+        for (OperationStats operation : stats.values()) {
+            if (operation.count() == 0) continue;
+            out.println(operation.format(duration));
+            passed &= operation.errors() == 0 && operation.p99Millis() <= maxP99Millis;
+        }
+        return passed;
+    }
+
+    private void execute(String operation) {
+        var stats = this.stats.get(operation);
+        var start = System.nanoTime();
+        try {
+            boolean success;
+            switch (operation) {
+                case "upload": success = upload(); break;
+                case "bulk": success = bulk(); break;
+                case "assign": success = assignTag(); break;
+                case "remove": success = removeTag(); break;
+                case "list": success = list(); break;
+                case "search": success = search(); break;
+                case "tags": success = tags(); break;
+                case "export": success = export(); break;
+                default: throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+            stats.record(System.nanoTime() - start, success);
+        } catch (IOException e) {
+            stats.record(System.nanoTime() - start, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean upload() throws IOException, InterruptedException {
+        var response = send(post("/file", "application/json", mapper.writeValueAsString(newFile())));
+        if (response.statusCode() != 200) return false;
+        remember(mapper.readTree(response.body()).path("id").asText());
+        return true;
+    }
+
+    private boolean bulk() throws IOException, InterruptedException {
+        var body = new StringBuilder();
+        for (int i = 0; i < BULK_SIZE; i++) body.append(mapper.writeValueAsString(newFile())).append('\n');
+
+        var response = send(post("/file/_bulk", "application/x-ndjson", body.toString()));
+        if (response.statusCode() != 200) return false;
+        for (JsonNode item : mapper.readTree(response.body()).path("items")) remember(item.path("id").asText());
+        return true;
+    }
+
+    private boolean assignTag() throws IOException, InterruptedException {
+        var id = knownId();
+        if (id == null) return upload();
+        var response = send(post("/file/" + id + "/tags", "application/json", tagBody()));
+        return response.statusCode() == 200;
+    }
+
+    private boolean removeTag() throws IOException, InterruptedException {
+        var id = knownId();
+        if (id == null) return upload();
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + "/file/" + id + "/tags"))
+                .header("Content-Type", "application/json")
+                .method("DELETE", HttpRequest.BodyPublishers.ofString(tagBody()))
+                .build();
+        // File may have no such tag, that is an expected answer
+        var status = send(request).statusCode();
+        return status == 200 || status == 404;
+    }
+
+    private boolean list() throws IOException, InterruptedException {
+        var random = ThreadLocalRandom.current();
+        var query = "/file?size=20&page=" + random.nextInt(5) + "&tags=" + pick(LIST_TAGS, random);
+        return send(get(query)).statusCode() == 200;
+    }
+
+    private boolean search() throws IOException, InterruptedException {
+        return send(get("/file?size=20&q=" + pick(WORDS, ThreadLocalRandom.current()))).statusCode() == 200;
+    }
+
+    private boolean tags() throws IOException, InterruptedException {
+        return send(get("/file/tags?size=10")).statusCode() == 200;
+    }
+
+    private boolean export() throws IOException, InterruptedException {
+        return send(get("/file/_export?tags=" + pick(TAGS, ThreadLocalRandom.current()))).statusCode() == 200;
+    }
+
+    private Map<String, Object> newFile() {
+        var random = ThreadLocalRandom.current();
+        var file = new LinkedHashMap<String, Object>();
+        file.put("name", pick(WORDS, random) + "-" + random.nextInt(1_000_000) + "." + pick(EXTENSIONS, random));
+        file.put("size", 1 + random.nextInt(10_000_000));
+        file.put("tags", List.of(pick(TAGS, random)));
+        return file;
+    }
+
+    private String tagBody() throws IOException {
+        return mapper.writeValueAsString(List.of(pick(TAGS, ThreadLocalRandom.current())));
+    }
+
+    private void remember(String id) {
+        ids.set((int) (uploaded.getAndIncrement() % KNOWN_IDS), id);
+    }
+
+    private String knownId() {
+        var known = (int) Math.min(uploaded.get(), KNOWN_IDS);
+        return known == 0 ? null : ids.get(ThreadLocalRandom.current().nextInt(known));
+    }
+
+    private static String pick(List<String> values, ThreadLocalRandom random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String contentType, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
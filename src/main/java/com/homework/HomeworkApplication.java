@@ -2,9 +2,22 @@ package com.homework;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ReactiveElasticsearchRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ReactiveElasticsearchRestClientAutoConfiguration;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 
-@SpringBootApplication
+// Clients, templates and repositories are configured by ElasticsearchConfig, and by ReactiveElasticsearchConfig
+// only in the reactive mode; none of them with file-storage.store=lucene
+@SpringBootApplication(exclude = {
+		ElasticsearchRestClientAutoConfiguration.class,
+		ElasticsearchDataAutoConfiguration.class,
+		ElasticsearchRepositoriesAutoConfiguration.class,
+		ReactiveElasticsearchRestClientAutoConfiguration.class,
+		ReactiveElasticsearchRepositoriesAutoConfiguration.class
+})
 public class HomeworkApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(HomeworkApplication.class, args);
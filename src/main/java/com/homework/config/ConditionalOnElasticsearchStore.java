@@ -0,0 +1,20 @@
+package com.homework.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Beans of the Elasticsearch store, the default file-storage.store. None of them is created with the Lucene store,
+ * so the application starts without a cluster.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Documented
+@ConditionalOnProperty(name = "file-storage.store", havingValue = "elasticsearch", matchIfMissing = true)
+public @interface ConditionalOnElasticsearchStore {
+}
@@ -0,0 +1,41 @@
+package com.homework.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Usage of the HTTP connection pool of the Elasticsearch client.
+ * Pending requests above zero mean the pool is too small for the load.
+ */
+@Component
+@ConditionalOnElasticsearchStore
+public class ElasticsearchClientMetrics implements MeterBinder {
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    public ElasticsearchClientMetrics(PoolingNHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "leased", "Connections executing a request", PoolStats::getLeased);
+        gauge(registry, "available", "Idle connections kept alive", PoolStats::getAvailable);
+        gauge(registry, "pending", "Requests waiting for a connection", PoolStats::getPending);
+        gauge(registry, "max", "Max count of connections", PoolStats::getMax);
+    }
+
+    private void gauge(MeterRegistry registry, String state, String description, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("elasticsearch.client.connections", connectionManager,
+                manager -> value.applyAsDouble(manager.getTotalStats()))
+                .tag("state", state)
+                .description(description)
+                .register(registry);
+    }
+}
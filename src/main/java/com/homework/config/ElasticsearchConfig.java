@@ -1,31 +1,93 @@
 package com.homework.config;
 
+import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.elasticsearch.client.ClientConfiguration;
-import org.springframework.data.elasticsearch.client.RestClients;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 
 @Configuration
-@EnableElasticsearchRepositories(basePackages = "com.homework.repository")
-@ComponentScan(basePackages = { "com.homework" })
+@ConditionalOnElasticsearchStore
+// Reactive repositories are created by ReactiveElasticsearchConfig in the reactive mode only
+@EnableElasticsearchRepositories(basePackages = "com.homework.repository",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = "com\\.homework\\.repository\\.reactive\\..*"))
 public class ElasticsearchConfig {
+    // Owned here and not by the client builder, so the pool usage could be published as metrics
     @Bean
-    RestHighLevelClient client() {
-        ClientConfiguration clientConfiguration = ClientConfiguration.builder()
-                .connectedTo("localhost:9200")
+    PoolingNHttpClientConnectionManager elasticsearchConnectionManager(FileStorageProperties properties)
+            throws IOReactorException {
+        var elasticsearch = properties.getElasticsearch();
+        var connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(
+                IOReactorConfig.custom()
+                        .setConnectTimeout((int) elasticsearch.getConnectTimeout().toMillis())
+                        .setSoTimeout((int) elasticsearch.getSocketTimeout().toMillis())
+                        .setSoKeepAlive(true)
+                        .build()));
+        connectionManager.setMaxTotal(elasticsearch.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(elasticsearch.getMaxConnectionsPerRoute());
+        return connectionManager;
+    }
+
+    @Bean
+    SniffOnFailureListener elasticsearchFailureListener() {
+        return new SniffOnFailureListener();
+    }
+
+    // The only client of the application, shared by the repositories, the template and the ingest queue
+    @Bean
+    RestHighLevelClient client(FileStorageProperties properties,
+                               PoolingNHttpClientConnectionManager connectionManager,
+                               SniffOnFailureListener failureListener) {
+        var elasticsearch = properties.getElasticsearch();
+        var hosts = elasticsearch.getHosts().stream().map(HttpHost::create).toArray(HttpHost[]::new);
+        var builder = RestClient.builder(hosts)
+                .setHttpClientConfigCallback(client -> client
+                        .setConnectionManager(connectionManager)
+                        .setKeepAliveStrategy((response, context) -> elasticsearch.getKeepAlive().toMillis()))
+                .setRequestConfigCallback(request -> request
+                        .setConnectTimeout((int) elasticsearch.getConnectTimeout().toMillis())
+                        .setSocketTimeout((int) elasticsearch.getSocketTimeout().toMillis()));
+        // Failed node triggers a sniff only if the sniffer is created
+        if (elasticsearch.isSniff()) builder.setFailureListener(failureListener);
+        return new RestHighLevelClient(builder);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "file-storage.elasticsearch.sniff", havingValue = "true")
+    Sniffer elasticsearchSniffer(FileStorageProperties properties,
+                                 RestHighLevelClient client,
+                                 SniffOnFailureListener failureListener) {
+        var sniffer = Sniffer.builder(client.getLowLevelClient())
+                .setSniffIntervalMillis((int) properties.getElasticsearch().getSniffInterval().toMillis())
                 .build();
+        failureListener.setSniffer(sniffer);
+        return sniffer;
+    }
 
-        return RestClients.create(clientConfiguration)
-                .rest();
+    @Bean
+    RequestOptions elasticsearchRequestOptions(FileStorageProperties properties) {
+        if (!properties.getElasticsearch().isResponseCompression()) return RequestOptions.DEFAULT;
+        var options = RequestOptions.DEFAULT.toBuilder();
+        options.addHeader("Accept-Encoding", "gzip");
+        options.setHttpAsyncResponseConsumerFactory(new GzipResponseConsumerFactory());
+        return options.build();
     }
 
     @Bean
-    public ElasticsearchOperations elasticsearchTemplate() {
-        return new ElasticsearchRestTemplate(client());
+    public ElasticsearchOperations elasticsearchTemplate(RestHighLevelClient client) {
+        return new ElasticsearchRestTemplate(client);
     }
 }
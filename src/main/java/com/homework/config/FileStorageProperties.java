@@ -0,0 +1,199 @@
+package com.homework.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "file-storage")
+public class FileStorageProperties {
+    // Storage of the file documents: the Elasticsearch cluster, or an embedded Lucene index for a single node
+    private Store store = Store.ELASTICSEARCH;
+
+    private Elasticsearch elasticsearch = new Elasticsearch();
+
+    private Lucene lucene = new Lucene();
+
+    private Bulk bulk = new Bulk();
+
+    private Ingest ingest = new Ingest();
+
+    private Search search = new Search();
+
+    private Cache cache = new Cache();
+
+    private Mime mime = new Mime();
+
+    private VirtualThreads virtualThreads = new VirtualThreads();
+
+    private Content content = new Content();
+
+    private Extract extract = new Extract();
+
+    // Extra extensions per type tag on top of the built-in ones, as extensions.archive=zip,rar
+    private Map<String, List<String>> extensions = new LinkedHashMap<>();
+
+    @Data
+    public static class Elasticsearch {
+        // Nodes which get requests in turn, as host:port or http://host:port
+        private List<String> hosts = new ArrayList<>(List.of("localhost:9200"));
+
+        // Replace the hosts with the nodes found in the cluster, periodically and after a node failure
+        private boolean sniff = false;
+
+        private Duration sniffInterval = Duration.ofMinutes(5);
+
+        // Open connections to all nodes and to one node, requests above them wait for a free connection
+        private int maxConnections = 100;
+
+        private int maxConnectionsPerRoute = 50;
+
+        private Duration connectTimeout = Duration.ofSeconds(1);
+
+        private Duration socketTimeout = Duration.ofSeconds(30);
+
+        // Idle connections are kept this long to be reused, unless the node closes them earlier
+        private Duration keepAlive = Duration.ofMinutes(1);
+
+        // Ask for gzip responses of the searches, bulks and updates of the file repository, request bodies are sent as is
+        private boolean responseCompression = false;
+    }
+
+    public enum Store {
+        ELASTICSEARCH,
+        LUCENE
+    }
+
+    @Data
+    public static class Lucene {
+        // Directory of the index, opened memory-mapped
+        private Path directory = Path.of("data", "index");
+
+        // Changes are searchable right after the write and made durable by a commit at this interval,
+        // a crash loses the changes of at most this time
+        private Duration commitInterval = Duration.ofSeconds(1);
+
+        // Memory of the documents buffered before they are written as a segment
+        private DataSize ramBuffer = DataSize.ofMegabytes(16);
+
+        // Completed tasks of the bulk updates by filter kept for their progress requests
+        private int completedTasks = 1000;
+    }
+
+    @Data
+    public static class Bulk {
+        // Max count of documents sent to Elasticsearch in one _bulk request
+        private int chunkSize = 500;
+    }
+
+    @Data
+    public static class Ingest {
+        // Return from upload before the file is stored and index files in background bulks
+        private boolean async = false;
+
+        // Max count of files waiting for indexing, uploads above it are rejected
+        private int queueCapacity = 10000;
+
+        // Flush a bulk when it has this count of files...
+        private int flushActions = 1000;
+
+        // ...or when this time passed since the last flush
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        // Count of bulks which could be sent while the next one is collected
+        private int concurrentRequests = 2;
+
+        // Time to wait for queued files to be flushed on shutdown
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Search {
+        // Listing total is counted exactly up to this value, above it the total is this value
+        private int trackTotalHitsUpTo = 10000;
+
+        // Count of files fetched with one search request while exporting
+        private int exportBatchSize = 1000;
+
+        // Pages ending past this many files are rejected, as by max_result_window of Elasticsearch,
+        // deeper files are listed with the cursor
+        private int maxResultWindow = 10000;
+
+        // Size histograms splitting their size range into more ranges are rejected, as by search.max_buckets
+        // of Elasticsearch
+        private int maxBuckets = 10000;
+    }
+
+    @Data
+    public static class Mime {
+        // Also tag uploads with the top level of their MIME type detected by name, as "application" or "text"
+        private boolean enabled = false;
+
+        // Max count of extensions with the detected tag kept in memory
+        private long cacheSize = 1000;
+    }
+
+    @Data
+    public static class Cache {
+        // Listing pages are served from memory for this long, writes through the service clear them earlier
+        private Duration pagesTtl = Duration.ofSeconds(5);
+
+        // Only pages before this one are cached, deeper pages are rarely repeated
+        private int maxPage = 3;
+
+        // Max count of distinct listing requests kept in the cache
+        private long pagesSize = 10000;
+
+        // Tag counts are served from memory for this long after they are aggregated
+        private Duration tagsTtl = Duration.ofSeconds(10);
+
+        // Max count of distinct tag filters kept in the cache
+        private long tagsSize = 1000;
+    }
+
+    @Data
+    public static class VirtualThreads {
+        // Handle servlet requests and async responses on virtual threads, needs to run on Java 21 or newer
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class Content {
+        // Directory of the uploaded file contents, with a manifest per id and every distinct chunk once
+        private Path directory = Path.of("data", "content");
+
+        // Average size of a chunk, rounded down to a power of two. One upload buffers at most four times of it
+        private DataSize chunkSize = DataSize.ofMegabytes(1);
+
+        // Cut chunks where the rolling hash of the content hits a boundary, so bytes inserted into a document
+        // change only the chunks around them; chunks of the fixed size otherwise
+        private boolean contentDefinedChunks = true;
+    }
+
+    @Data
+    public static class Extract {
+        // Parse uploaded contents with Tika in background and index their text, so q finds files by content too
+        private boolean enabled = true;
+
+        // Worker threads parsing contents, apart from the request threads
+        private int threads = 2;
+
+        // Max count of contents waiting for a worker, contents uploaded above it are not parsed
+        private int queueCapacity = 1000;
+
+        // Parsing of one content is stopped after this time, the text read until then is indexed
+        private Duration timeout = Duration.ofSeconds(30);
+
+        // Max count of characters of the text indexed per file
+        private int maxLength = 100_000;
+    }
+}
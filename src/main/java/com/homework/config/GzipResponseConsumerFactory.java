@@ -0,0 +1,34 @@
+package com.homework.config;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+
+/**
+ * Buffers responses as the default consumer and inflates the gzip ones.
+ * The low level client of this version neither asks for compressed responses nor reads them.
+ */
+class GzipResponseConsumerFactory implements HttpAsyncResponseConsumerFactory {
+
+    // Same limit of the buffered response as the default consumer
+    private static final int BUFFER_LIMIT = 100 * 1024 * 1024;
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new HeapBufferedAsyncResponseConsumer(BUFFER_LIMIT) {
+            @Override
+            protected HttpResponse buildResult(HttpContext context) throws Exception {
+                var response = super.buildResult(context);
+                var entity = response.getEntity();
+                if (entity != null && entity.getContentEncoding() != null
+                        && "gzip".equalsIgnoreCase(entity.getContentEncoding().getValue())) {
+                    response.setEntity(new GzipDecompressingEntity(entity));
+                }
+                return response;
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package com.homework.config;
+
+import org.apache.http.HttpHost;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.elasticsearch.client.ClientConfiguration;
+import org.springframework.data.elasticsearch.client.reactive.ReactiveElasticsearchClient;
+import org.springframework.data.elasticsearch.client.reactive.ReactiveRestClients;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchTemplate;
+import org.springframework.data.elasticsearch.repository.config.EnableReactiveElasticsearchRepositories;
+
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking client and repositories of the reactive mode. The blocking client of {@link ElasticsearchConfig}
+ * is kept to create and migrate the index on startup and for the ingest queue.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnElasticsearchStore
+@EnableReactiveElasticsearchRepositories(basePackages = "com.homework.repository.reactive")
+public class ReactiveElasticsearchConfig {
+    // Same nodes and timeouts as the blocking client, requests are sent by the Netty event loop
+    @Bean
+    ReactiveElasticsearchClient reactiveElasticsearchClient(FileStorageProperties properties) {
+        var elasticsearch = properties.getElasticsearch();
+        var hosts = elasticsearch.getHosts().stream().map(HttpHost::create).collect(Collectors.toList());
+        var connected = ClientConfiguration.builder()
+                .connectedTo(hosts.stream().map(HttpHost::toHostString).toArray(String[]::new));
+        ClientConfiguration.TerminalClientConfigurationBuilder builder = "https".equals(hosts.get(0).getSchemeName())
+                ? connected.usingSsl()
+                : connected;
+        return ReactiveRestClients.create(builder
+                .withConnectTimeout(elasticsearch.getConnectTimeout())
+                .withSocketTimeout(elasticsearch.getSocketTimeout())
+                .build());
+    }
+
+    @Bean
+    ReactiveElasticsearchOperations reactiveElasticsearchTemplate(ReactiveElasticsearchClient client) {
+        return new ReactiveElasticsearchTemplate(client);
+    }
+}
@@ -0,0 +1,37 @@
+package com.homework.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+import java.util.List;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig {
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    // Tomcat is on the classpath for the servlet mode and would be chosen before Netty otherwise
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // NDJSON is read and written one value per line, as the bulk upload and the export expect
+    @Bean
+    CodecCustomizer ndjsonCodecCustomizer(ObjectMapper objectMapper) {
+        return configurer -> {
+            var encoder = new Jackson2JsonEncoder(objectMapper, APPLICATION_NDJSON);
+            encoder.setStreamingMediaTypes(List.of(APPLICATION_NDJSON));
+            configurer.customCodecs().register(new Jackson2JsonDecoder(objectMapper, APPLICATION_NDJSON));
+            configurer.customCodecs().register(encoder);
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package com.homework.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.PathSelectors;
@@ -14,6 +15,8 @@ import java.util.Collections;
 
 @Configuration
 @EnableSwagger2
+// Springfox 2 documents only Spring MVC controllers
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class Swagger {
     @Bean
     public Docket swaggerConfig() {
@@ -0,0 +1,48 @@
+package com.homework.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the blocking request path on virtual threads: Tomcat hands every request to a new virtual thread
+ * instead of its pool of max-threads, and async responses as the export are written on them too.
+ * The code is compiled for Java 11, so the executor is looked up at runtime and the application fails
+ * to start if file-storage.virtual-threads.enabled is set on an older JDK.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "file-storage.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig implements WebMvcConfigurer {
+
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor could not be created", e);
+        }
+    }
+
+    // Requests are limited by server.tomcat.max-connections then, not by server.tomcat.threads.max
+    @Bean
+    TomcatConnectorCustomizer virtualThreadsConnectorCustomizer(ExecutorService virtualThreadExecutor) {
+        return connector -> connector.getProtocolHandler().setExecutor(virtualThreadExecutor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor()));
+    }
+}
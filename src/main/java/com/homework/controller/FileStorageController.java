@@ -1,35 +1,59 @@
 package com.homework.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.homework.dto.AllFilesRequestDto;
 import com.homework.dto.ErrorResponseDto;
+import com.homework.dto.FilesDeleteRequestDto;
+import com.homework.dto.SizeHistogramRequestDto;
 import com.homework.dto.SuccessResponseDto;
+import com.homework.dto.TagsRequestDto;
+import com.homework.dto.TagsUpdateRequestDto;
+import com.homework.dto.TagsUpdateResponseDto;
 import com.homework.exceptions.*;
 import com.homework.service.FileStorageService;
 import com.homework.dto.FileCreateDto;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.validation.Errors;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
 @RequestMapping("/file")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FileStorageController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final FileStorageService fileStorageService;
 
-    FileStorageController(FileStorageService fileStorageService) {
+    private final ObjectMapper objectMapper;
+
+    FileStorageController(FileStorageService fileStorageService, ObjectMapper objectMapper) {
         this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping(produces = "application/json")
@@ -41,6 +65,65 @@ public class FileStorageController {
         return new ResponseEntity<>(fileStorageService.upload(dto), HttpStatus.OK);
     }
 
+    @PostMapping(value = "/_bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Upload list of files to dataStorage",
+            notes = "Provide a list of files (ex.[{\"name\": \"a.txt\", \"size\": 1}]). " +
+                    "Result contains id or error for every file in the same order")
+    public ResponseEntity<?> bulkUpload(@ApiParam(value = "Name and size values of the files", required = true)
+                                        @RequestBody List<FileCreateDto> dtos) {
+        return new ResponseEntity<>(fileStorageService.bulkUpload(dtos.iterator()), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/_bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = APPLICATION_NDJSON_VALUE)
+    @ApiOperation(value = "Upload stream of files to dataStorage",
+            notes = "Provide one file per line. Files are read and stored chunk by chunk, " +
+                    "a line which is not a file gets an error in its place")
+    public ResponseEntity<?> bulkUploadStream(InputStream body) throws IOException {
+        try (var lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            var files = lines.lines().filter(line -> !line.isBlank()).iterator();
+            return new ResponseEntity<>(fileStorageService.bulkUploadLines(files,
+                    objectMapper.readerFor(FileCreateDto.class)), HttpStatus.OK);
+        }
+    }
+
+    @GetMapping(value = "/tags", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get tag counts",
+            notes = "Most frequent tags with count of files, optionally among files found by query and tags")
+    public ResponseEntity<?> countTags(@ApiParam(value = "Tags and query to filter files by them")
+                                       @Valid TagsRequestDto dto) {
+        return new ResponseEntity<>(fileStorageService.countTags(dto), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/sizes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get size histogram",
+            notes = "Count of files per range of interval bytes, optionally among files found by query, tags and size")
+    public ResponseEntity<?> sizeHistogram(@ApiParam(value = "Interval and filter of the files")
+                                           @Valid SizeHistogramRequestDto dto) {
+        return new ResponseEntity<>(fileStorageService.sizeHistogram(dto), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/_export", produces = APPLICATION_NDJSON_VALUE)
+    @ApiOperation(value = "Export all files",
+            notes = "Files are filtered by query and tags like in the listing and streamed one per line")
+    public ResponseEntity<StreamingResponseBody> export(@ApiParam(value = "Tags and query to filter files by them")
+                                                        AllFilesRequestDto dto) {
+        StreamingResponseBody body = out -> {
+            try (var files = fileStorageService.export(dto)) {
+                var it = files.iterator();
+                while (it.hasNext()) {
+                    out.write(objectMapper.writeValueAsBytes(it.next()));
+                    out.write('\n');
+                }
+            }
+        };
+        // Streaming body is written after the handler returns, so the type is not negotiated for it
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
     @DeleteMapping(value = "/{id}", produces = "application/json")
     @ApiOperation(value = "Delete file from storage by id",
             notes = "Provide id of the file to delete it",
@@ -61,6 +144,99 @@ public class FileStorageController {
         }
     }
 
+    @PutMapping(value = "/{id}/content", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Upload content of the file by id",
+            notes = "Body is stored as is and replaces the previous content, size of the file becomes its length. " +
+                    "With contentHash the body is not read and the content of another file with this SHA-256 is used, " +
+                    "404 tells to upload the content instead")
+    public ResponseEntity<?> putContent(@ApiParam(value = "Id of the file", required = true)
+                                        @PathVariable String id,
+                                        @ApiParam(value = "SHA-256 of the content, as hex")
+                                        @RequestParam(required = false) String contentHash,
+                                        InputStream body) throws IOException {
+        try {
+
+            if (contentHash != null) fileStorageService.copyContent(id, contentHash);
+            else fileStorageService.putContent(id, body);
+
+            return new ResponseEntity<>(new SuccessResponseDto(true), HttpStatus.OK);
+
+        } catch (NotFoundException e) {
+
+            return new ResponseEntity<>(new ErrorResponseDto(false, e.getMessage()), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @GetMapping(value = "/{id}/content")
+    @ApiOperation(value = "Download content of the file by id",
+            notes = "Supports Range requests, as bytes=0-1023")
+    public ResponseEntity<StreamingResponseBody> getContent(@ApiParam(value = "Id of the file", required = true)
+                                                            @PathVariable String id,
+                                                            @RequestHeader HttpHeaders headers) throws NotFoundException {
+        // Body is declared as streaming so it is written asynchronously, a missing content is answered by the interceptor
+        var content = fileStorageService.getContent(id);
+        var length = content.getSize();
+        var ranges = parseRanges(headers);
+        if (ranges == null) ranges = List.of();
+        for (var range : ranges) {
+            if (length == 0 || range.getRangeStart(length) >= length) {
+                content.close();
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                        .build();
+            }
+        }
+
+        // Content holds its chunks until the body is written, which happens after the handler returns.
+        // Servlet stream is not a channel of the file system, so transferTo copies the regions through a small
+        // JDK buffer; only the reactive mode sends them without copying
+        if (ranges.size() > 1) {
+            var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            var parts = ranges;
+            StreamingResponseBody body = out -> {
+                try (content) {
+                    var channel = Channels.newChannel(out);
+                    for (var range : parts) {
+                        var start = range.getRangeStart(length);
+                        var end = range.getRangeEnd(length) + 1;
+                        out.write(("\r\n--" + boundary + "\r\n" +
+                                HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n" +
+                                HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, length) + "\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        content.transferTo(start, end, channel);
+                    }
+                    out.write(("\r\n--" + boundary + "--").getBytes(StandardCharsets.US_ASCII));
+                }
+            };
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentType(new MediaType("multipart", "byteranges", Map.of("boundary", boundary)))
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .body(body);
+        }
+
+        long start = 0;
+        long end = length;
+        var response = ResponseEntity.ok();
+        if (!ranges.isEmpty()) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length) + 1;
+            response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+        }
+        var from = start;
+        var to = end;
+        StreamingResponseBody body = out -> {
+            try (content) {
+                content.transferTo(from, to, Channels.newChannel(out));
+            }
+        };
+        return response
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(end - start)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(body);
+    }
+
     @PostMapping(value = "/{id}/tags",
             produces = MediaType.APPLICATION_JSON_VALUE,
             consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -102,14 +278,93 @@ public class FileStorageController {
         }
     }
 
+    @PostMapping(value = "/_delete",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Delete many files",
+            notes = "Provide ids of the files or a filter like in the listing with tags or q, which matches names only. " +
+                    "Files given by id are deleted before the response, a filter starts a task (202) to follow by its id")
+    public ResponseEntity<?> bulkDelete(@ApiParam(value = "Files to delete", required = true)
+                                        @Valid @RequestBody FilesDeleteRequestDto dto, Errors errors) {
+        if (errors.hasErrors()) getExceptionMessage(errors);
+        var response = fileStorageService.bulkDelete(dto);
+        return new ResponseEntity<>(response, response.getTask() != null ? HttpStatus.ACCEPTED : HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/_delete/{task}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get progress of a delete task",
+            notes = "Provide the task id returned by deleting files by filter")
+    public ResponseEntity<?> getDeleteTask(@ApiParam(value = "Id of the task", required = true)
+                                           @PathVariable String task) {
+        try {
+            return new ResponseEntity<>(fileStorageService.getDeleteTask(task), HttpStatus.OK);
+        } catch (NotFoundException e) {
+            return new ResponseEntity<>(new ErrorResponseDto(false, e.getMessage()), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @PostMapping(value = "/_tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Add tags to many files",
+            notes = "Provide ids of the files or a filter like in the listing, q matching names only, and tags to add. " +
+                    "Files given by id are updated before the response, a filter starts a task (202) to follow by its id")
+    public ResponseEntity<?> bulkAssignTags(@ApiParam(value = "Files and tags to add to them", required = true)
+                                            @Valid @RequestBody TagsUpdateRequestDto dto, Errors errors) {
+        if (errors.hasErrors()) getExceptionMessage(errors);
+        return tagsUpdated(fileStorageService.bulkAssignTags(dto));
+    }
+
+    @DeleteMapping(value = "/_tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Delete tags from many files",
+            notes = "Provide ids of the files or a filter like in the listing, q matching names only, and tags to delete. " +
+                    "Files which have not all of the tags are left untouched")
+    public ResponseEntity<?> bulkDeleteTags(@ApiParam(value = "Files and tags to delete from them", required = true)
+                                            @Valid @RequestBody TagsUpdateRequestDto dto, Errors errors) {
+        if (errors.hasErrors()) getExceptionMessage(errors);
+        return tagsUpdated(fileStorageService.bulkDeleteTags(dto));
+    }
+
+    @GetMapping(value = "/_tags/{task}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get progress of a tags task",
+            notes = "Provide the task id returned by adding or deleting tags by filter")
+    public ResponseEntity<?> getTagsTask(@ApiParam(value = "Id of the task", required = true)
+                                         @PathVariable String task) {
+        try {
+            return new ResponseEntity<>(fileStorageService.getTagsTask(task), HttpStatus.OK);
+        } catch (NotFoundException e) {
+            return new ResponseEntity<>(new ErrorResponseDto(false, e.getMessage()), HttpStatus.NOT_FOUND);
+        }
+    }
+
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Get all files",
-            notes = "You can get all files by query or by tags. Also, you can provide pagination with size and page values")
+            notes = "You can get all files by query, by tags or by minSize and maxSize in bytes. " +
+                    "Also, you can provide pagination with size and page values and sort by size with sort=size or sort=size,desc")
     public ResponseEntity<?> getAll(@ApiParam(value = "Tags to search files by them")
                                     AllFilesRequestDto dto) {
         return new ResponseEntity<>(fileStorageService.getAll(dto), HttpStatus.OK);
     }
 
+    private ResponseEntity<?> tagsUpdated(TagsUpdateResponseDto response) {
+        return new ResponseEntity<>(response, response.getTask() != null ? HttpStatus.ACCEPTED : HttpStatus.OK);
+    }
+
+    // Ranges of the request, null if the header is not valid so the whole file is sent
+    private static List<HttpRange> parseRanges(HttpHeaders headers) {
+        try {
+            return headers.getRange();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + (end - 1) + "/" + length;
+    }
+
     private void getExceptionMessage(Errors errors) {
         Set<ConstraintViolation<?>> violationsSet = new HashSet<>();
         for (ObjectError e : errors.getAllErrors()) {
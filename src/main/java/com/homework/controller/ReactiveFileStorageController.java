@@ -0,0 +1,328 @@
+package com.homework.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homework.dto.AllFilesRequestDto;
+import com.homework.dto.AllFilesResponseDto;
+import com.homework.dto.BulkResponseDto;
+import com.homework.dto.ErrorResponseDto;
+import com.homework.dto.FileCreateDto;
+import com.homework.dto.FileDto;
+import com.homework.dto.FilesDeleteRequestDto;
+import com.homework.dto.FilesDeleteResponseDto;
+import com.homework.dto.IDDto;
+import com.homework.dto.SizeCountDto;
+import com.homework.dto.SizeHistogramRequestDto;
+import com.homework.dto.SuccessResponseDto;
+import com.homework.dto.TagCountDto;
+import com.homework.dto.TagsRequestDto;
+import com.homework.dto.TagsUpdateRequestDto;
+import com.homework.dto.TagsUpdateResponseDto;
+import com.homework.exceptions.NotFoundException;
+import com.homework.repository.FileContent;
+import com.homework.service.ReactiveFileStorageService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.ResourceHttpMessageWriter;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerResponse;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes and DTOs of {@link FileStorageController} served by WebFlux with spring.main.web-application-type=reactive.
+ */
+@RestController
+@RequestMapping("/file")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileStorageController {
+
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final ResourceHttpMessageWriter RESOURCE_WRITER = new ResourceHttpMessageWriter();
+
+    private static final ResolvableType RESOURCE_TYPE = ResolvableType.forClass(Resource.class);
+
+    private final ReactiveFileStorageService fileStorageService;
+
+    private final ObjectMapper objectMapper;
+
+    ReactiveFileStorageController(ReactiveFileStorageService fileStorageService, ObjectMapper objectMapper) {
+        this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(produces = "application/json")
+    @ApiOperation(value = "Upload file to dataStorage")
+    public Mono<IDDto> upload(@ApiParam(value = "Name and size values of the file", required = true)
+                              @Valid @RequestBody FileCreateDto dto) {
+        return fileStorageService.upload(dto);
+    }
+
+    // JSON array is decoded element by element
+    @PostMapping(value = "/_bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Upload list of files to dataStorage",
+            notes = "Provide a list of files (ex.[{\"name\": \"a.txt\", \"size\": 1}]). " +
+                    "Result contains id or error for every file in the same order")
+    public Mono<BulkResponseDto> bulkUpload(@ApiParam(value = "Name and size values of the files", required = true)
+                                            @RequestBody Flux<FileCreateDto> dtos) {
+        return fileStorageService.bulkUpload(dtos);
+    }
+
+    // NDJSON is decoded line by line, so a malformed line fails alone
+    @PostMapping(value = "/_bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = APPLICATION_NDJSON_VALUE)
+    @ApiOperation(value = "Upload stream of files to dataStorage",
+            notes = "Provide one file per line. Files are read and stored chunk by chunk, " +
+                    "a line which is not a file gets an error in its place")
+    public Mono<BulkResponseDto> bulkUploadStream(@ApiParam(value = "Name and size values of the files", required = true)
+                                                  @RequestBody Flux<String> lines) {
+        return fileStorageService.bulkUploadLines(lines.filter(line -> !line.isBlank()),
+                objectMapper.readerFor(FileCreateDto.class));
+    }
+
+    @GetMapping(value = "/tags", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get tag counts",
+            notes = "Most frequent tags with count of files, optionally among files found by query and tags")
+    public Mono<List<TagCountDto>> countTags(@ApiParam(value = "Tags and query to filter files by them")
+                                             @Valid TagsRequestDto dto) {
+        return fileStorageService.countTags(dto);
+    }
+
+    @GetMapping(value = "/sizes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get size histogram",
+            notes = "Count of files per range of interval bytes, optionally among files found by query, tags and size")
+    public Mono<List<SizeCountDto>> sizeHistogram(@ApiParam(value = "Interval and filter of the files")
+                                                  @Valid SizeHistogramRequestDto dto) {
+        return fileStorageService.sizeHistogram(dto);
+    }
+
+    @GetMapping(value = "/_export", produces = APPLICATION_NDJSON_VALUE)
+    @ApiOperation(value = "Export all files",
+            notes = "Files are filtered by query and tags like in the listing and streamed one per line")
+    public Flux<FileDto> export(@ApiParam(value = "Tags and query to filter files by them")
+                                AllFilesRequestDto dto) {
+        return fileStorageService.export(dto);
+    }
+
+    @DeleteMapping(value = "/{id}", produces = "application/json")
+    @ApiOperation(value = "Delete file from storage by id",
+            notes = "Provide id of the file to delete it")
+    public Mono<ResponseEntity<?>> deleteFile(@ApiParam(value = "Id of the file to delete", required = true)
+                                              @PathVariable String id) {
+        return fileStorageService.deleteById(id)
+                .then(Mono.<ResponseEntity<?>>just(success()))
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    @PutMapping(value = "/{id}/content", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Upload content of the file by id",
+            notes = "Body is stored as is and replaces the previous content, size of the file becomes its length. " +
+                    "With contentHash the body is not read and the content of another file with this SHA-256 is used, " +
+                    "404 tells to upload the content instead")
+    public Mono<ResponseEntity<?>> putContent(@ApiParam(value = "Id of the file", required = true)
+                                              @PathVariable String id,
+                                              @ApiParam(value = "SHA-256 of the content, as hex")
+                                              @RequestParam(required = false) String contentHash,
+                                              ServerHttpRequest request) {
+        // Raw body is read whatever its content type, as the servlet variant does
+        return (contentHash != null
+                ? fileStorageService.copyContent(id, contentHash)
+                : fileStorageService.putContent(id, request.getBody()))
+                .then(Mono.<ResponseEntity<?>>just(success()))
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    // Content is written to the response here, region by region, so no entity is returned for it
+    @GetMapping(value = "/{id}/content")
+    @ApiOperation(value = "Download content of the file by id",
+            notes = "Supports Range requests, as bytes=0-1023")
+    public Mono<ResponseEntity<?>> getContent(@ApiParam(value = "Id of the file", required = true)
+                                              @PathVariable String id,
+                                              ServerHttpRequest request,
+                                              ServerHttpResponse response) {
+        return fileStorageService.getContent(id)
+                .flatMap(content -> writeContent(content, request, response).doFinally(signal -> content.close()))
+                .then(Mono.<ResponseEntity<?>>empty())
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(new ErrorResponseDto(false, e.getMessage()))));
+    }
+
+    @PostMapping(value = "/{id}/tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Add list of tags to the file by id",
+            notes = "Provide an id and tags as a list (ex.[\"tag1\", \"tag2\"]) to add it to the file")
+    public Mono<ResponseEntity<?>> assignTags(@ApiParam(value = "Id of the file to add tags to id", required = true)
+                                              @PathVariable String id,
+                                              @ApiParam(value = "List of the tags to add to the file", required = true)
+                                              @RequestBody List<String> tags) {
+        return fileStorageService.assignTags(id, tags)
+                .then(Mono.<ResponseEntity<?>>just(success()))
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    @DeleteMapping(value = "/{id}/tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Delete tags from the file by id",
+            notes = "Provide an id and tags as a list (ex.[\"tag1\", \"tag2\"]) to delete it from the file")
+    public Mono<ResponseEntity<?>> deleteTags(@PathVariable String id,
+                                              @ApiParam(value = "List of the tags to delete from the file", required = true)
+                                              @RequestBody List<String> tags) {
+        return fileStorageService.deleteTags(id, tags)
+                .then(Mono.<ResponseEntity<?>>just(success()))
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    @PostMapping(value = "/_delete",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Delete many files",
+            notes = "Provide ids of the files or a filter like in the listing with tags or q, which matches names only. " +
+                    "Files given by id are deleted before the response, a filter starts a task (202) to follow by its id")
+    public Mono<ResponseEntity<FilesDeleteResponseDto>> bulkDelete(@ApiParam(value = "Files to delete", required = true)
+                                                                   @Valid @RequestBody FilesDeleteRequestDto dto) {
+        return fileStorageService.bulkDelete(dto).map(response ->
+                new ResponseEntity<>(response, response.getTask() != null ? HttpStatus.ACCEPTED : HttpStatus.OK));
+    }
+
+    @GetMapping(value = "/_delete/{task}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get progress of a delete task",
+            notes = "Provide the task id returned by deleting files by filter")
+    public Mono<ResponseEntity<?>> getDeleteTask(@ApiParam(value = "Id of the task", required = true)
+                                                 @PathVariable String task) {
+        return fileStorageService.getDeleteTask(task)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    @PostMapping(value = "/_tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Add tags to many files",
+            notes = "Provide ids of the files or a filter like in the listing, q matching names only, and tags to add. " +
+                    "Files given by id are updated before the response, a filter starts a task (202) to follow by its id")
+    public Mono<ResponseEntity<TagsUpdateResponseDto>> bulkAssignTags(
+            @ApiParam(value = "Files and tags to add to them", required = true)
+            @Valid @RequestBody TagsUpdateRequestDto dto) {
+        return fileStorageService.bulkAssignTags(dto).map(this::tagsUpdated);
+    }
+
+    @DeleteMapping(value = "/_tags",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Delete tags from many files",
+            notes = "Provide ids of the files or a filter like in the listing, q matching names only, and tags to delete. " +
+                    "Files which have not all of the tags are left untouched")
+    public Mono<ResponseEntity<TagsUpdateResponseDto>> bulkDeleteTags(
+            @ApiParam(value = "Files and tags to delete from them", required = true)
+            @Valid @RequestBody TagsUpdateRequestDto dto) {
+        return fileStorageService.bulkDeleteTags(dto).map(this::tagsUpdated);
+    }
+
+    @GetMapping(value = "/_tags/{task}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get progress of a tags task",
+            notes = "Provide the task id returned by adding or deleting tags by filter")
+    public Mono<ResponseEntity<?>> getTagsTask(@ApiParam(value = "Id of the task", required = true)
+                                               @PathVariable String task) {
+        return fileStorageService.getTagsTask(task)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(NotFoundException.class, this::notFound);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Get all files",
+            notes = "You can get all files by query, by tags or by minSize and maxSize in bytes. " +
+                    "Also, you can provide pagination with size and page values and sort by size with sort=size or sort=size,desc")
+    public Mono<AllFilesResponseDto> getAll(@ApiParam(value = "Tags to search files by them")
+                                            AllFilesRequestDto dto) {
+        return fileStorageService.getAll(dto);
+    }
+
+    private ResponseEntity<TagsUpdateResponseDto> tagsUpdated(TagsUpdateResponseDto response) {
+        return new ResponseEntity<>(response, response.getTask() != null ? HttpStatus.ACCEPTED : HttpStatus.OK);
+    }
+
+    private ResponseEntity<?> success() {
+        return new ResponseEntity<>(new SuccessResponseDto(true), HttpStatus.OK);
+    }
+
+    private Mono<ResponseEntity<?>> notFound(NotFoundException e) {
+        return Mono.just(new ResponseEntity<>(new ErrorResponseDto(false, e.getMessage()), HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Sends every chunk region of the content with zero-copy transfer on Netty, the first one commits the status
+     * and headers and the others follow on the connection. Multiple ranges and other servers are answered
+     * by the resource writer of WebFlux, which copies the chunks through buffers.
+     */
+    private static Mono<Void> writeContent(FileContent content, ServerHttpRequest request, ServerHttpResponse response) {
+        var ranges = parseRanges(request.getHeaders());
+        var connection = response instanceof AbstractServerHttpResponse
+                ? ((AbstractServerHttpResponse) response).getNativeResponse()
+                : null;
+        if (!(connection instanceof HttpServerResponse) || ranges.size() > 1) {
+            return RESOURCE_WRITER.write(Mono.just(content.toResource()), RESOURCE_TYPE, RESOURCE_TYPE,
+                    MediaType.APPLICATION_OCTET_STREAM, request, response, Map.of());
+        }
+
+        var length = content.getSize();
+        var headers = response.getHeaders();
+        long start = 0;
+        long end = length;
+        if (!ranges.isEmpty()) {
+            var range = ranges.get(0);
+            if (length == 0 || range.getRangeStart(length) >= length) {
+                response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return response.setComplete();
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length) + 1;
+            response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        }
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(end - start);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        var regions = content.regions(start, end);
+        if (regions.isEmpty()) return response.setComplete();
+        var first = regions.get(0);
+        return ((ZeroCopyHttpOutputMessage) response).writeWith(first.getPath(), first.getPosition(), first.getCount())
+                .thenMany(Flux.fromIterable(regions.subList(1, regions.size())))
+                .concatMap(region -> ((HttpServerResponse) connection)
+                        .sendFile(region.getPath(), region.getPosition(), region.getCount())
+                        .then())
+                .then();
+    }
+
+    // Ranges of the request, empty if the header is not valid so the whole file is sent
+    private static List<HttpRange> parseRanges(HttpHeaders headers) {
+        try {
+            return headers.getRange();
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+}
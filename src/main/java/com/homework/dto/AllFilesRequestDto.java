@@ -21,4 +21,30 @@ public class AllFilesRequestDto {
     int page = 0;
 
     String q;
+
+    // Continuation token from the previous response, page is ignored when it is set
+    String cursor;
+
+    // Only files with this SHA-256 of the content, as the copies of a document
+    String contentHash;
+
+    // Bounds of the size in bytes, both inclusive
+    Long minSize;
+
+    Long maxSize;
+
+    // Order of the listing, as size or size,desc; files are listed by id by default
+    String sort;
+
+    public AllFilesRequestDto(List<String> tags, int size, int page, String q) {
+        this(tags, size, page, q, null);
+    }
+
+    public AllFilesRequestDto(List<String> tags, int size, int page, String q, String cursor) {
+        this(tags, size, page, q, cursor, null);
+    }
+
+    public AllFilesRequestDto(List<String> tags, int size, int page, String q, String cursor, String contentHash) {
+        this(tags, size, page, q, cursor, contentHash, null, null, null);
+    }
 }
@@ -1,13 +1,24 @@
 package com.homework.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class AllFilesResponseDto {
     int total;
     List<FileDto> page;
+
+    // Token to request the page after this one, absent on the last page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String cursor;
+
+    public AllFilesResponseDto(int total, List<FileDto> page) {
+        this(total, page, null);
+    }
 }
@@ -0,0 +1,12 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BulkItemDto {
+    String id;
+    boolean success;
+    String error;
+}
@@ -0,0 +1,13 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BulkResponseDto {
+    boolean errors;
+    List<BulkItemDto> items;
+}
@@ -4,26 +4,34 @@ import com.homework.model.File;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
-import java.util.Arrays;
 import java.util.List;
 
 @Data
 @Builder
 @AllArgsConstructor
+@NoArgsConstructor
 public class FileDto {
     String id;
     String name;
-    Integer size;
+    long size;
     List<String> tags;
+    String contentHash;
+    File.Metadata metadata;
+
+    public FileDto(String id, String name, long size, List<String> tags) {
+        this(id, name, size, tags, null, null);
+    }
 
     public static FileDto fromEntity(File file){
-        var tags = file.getTags() == null ? null : Arrays.asList(file.getTags().split(" "));
         return FileDto.builder()
                 .id(file.getId())
                 .name(file.getName())
                 .size(file.getSize())
-                .tags(tags)
+                .tags(file.getTags())
+                .contentHash(file.getContentHash())
+                .metadata(file.getMetadata())
                 .build();
     }
 }
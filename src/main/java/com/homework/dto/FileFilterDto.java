@@ -0,0 +1,27 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileFilterDto {
+    // Tags which the file must all have
+    List<String> tags;
+
+    // Part of the file name, ignoring case, unlike q of the listing the extracted text is not matched
+    String q;
+
+    // Bounds of the size in bytes, both inclusive
+    Long minSize;
+
+    Long maxSize;
+
+    public FileFilterDto(List<String> tags, String q) {
+        this(tags, q, null, null);
+    }
+}
@@ -0,0 +1,30 @@
+package com.homework.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.AssertTrue;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilesDeleteRequestDto {
+    // Files to delete by id
+    List<String> ids;
+
+    // Or all files matching the filter, which must have tags, q or a size bound
+    FileFilterDto filter;
+
+    @JsonIgnore
+    @AssertTrue(message = "Provide either not empty ids or filter with tags, q, minSize or maxSize!")
+    public boolean isTargetValid() {
+        if (filter == null) return ids != null && !ids.isEmpty();
+        var hasTags = filter.getTags() != null && !filter.getTags().isEmpty();
+        var hasQuery = filter.getQ() != null && !filter.getQ().isEmpty();
+        var hasSize = filter.getMinSize() != null || filter.getMaxSize() != null;
+        return ids == null && (hasTags || hasQuery || hasSize);
+    }
+}
@@ -0,0 +1,31 @@
+package com.homework.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FilesDeleteResponseDto {
+    // Id of the task deleting files by filter, absent when files were given by id
+    String task;
+
+    boolean completed;
+
+    long total;
+
+    long deleted;
+
+    // Files changed by another request while the task ran, left as they were
+    long conflicts;
+
+    // Ids without a file
+    List<String> missing;
+
+    List<String> failures;
+}
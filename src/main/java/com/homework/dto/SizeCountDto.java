@@ -0,0 +1,16 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SizeCountDto {
+    // Lowest size of the range, inclusive
+    long from;
+
+    // Size above the range, exclusive
+    long to;
+
+    long count;
+}
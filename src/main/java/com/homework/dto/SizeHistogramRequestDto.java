@@ -0,0 +1,26 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SizeHistogramRequestDto {
+    List<String> tags;
+
+    String q;
+
+    // Bounds of the size in bytes, both inclusive
+    Long minSize;
+
+    Long maxSize;
+
+    // Width of every size range in bytes
+    @Min(1)
+    long interval = 1024 * 1024;
+}
@@ -0,0 +1,11 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TagCountDto {
+    String tag;
+    long count;
+}
@@ -0,0 +1,21 @@
+package com.homework.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TagsRequestDto {
+    List<String> tags;
+
+    // Count of the most frequent tags to return
+    @Min(1)
+    int size = 10;
+
+    String q;
+}
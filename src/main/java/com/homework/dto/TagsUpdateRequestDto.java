@@ -0,0 +1,30 @@
+package com.homework.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TagsUpdateRequestDto {
+    // Files to update by id
+    List<String> ids;
+
+    // Or all files matching the filter, an empty filter matches all files
+    FileFilterDto filter;
+
+    @NotEmpty(message = "Does not allow empty tags!")
+    List<String> tags;
+
+    @JsonIgnore
+    @AssertTrue(message = "Provide either not empty ids or filter!")
+    public boolean isTargetValid() {
+        return filter == null ? ids != null && !ids.isEmpty() : ids == null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.homework.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TagsUpdateResponseDto {
+    // Id of the task updating files by filter, absent when files were given by id
+    String task;
+
+    boolean completed;
+
+    long total;
+
+    long updated;
+
+    // Files which already had the tags to add or had not all the tags to remove
+    long noops;
+
+    // Files changed by another request while the task ran, left as they were
+    long conflicts;
+
+    // Ids without a file
+    List<String> missing;
+
+    List<String> failures;
+}
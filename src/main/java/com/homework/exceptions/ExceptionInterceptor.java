@@ -1,6 +1,8 @@
 package com.homework.exceptions;
 
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.homework.dto.ErrorResponseDto;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -10,10 +12,53 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import javax.validation.ConstraintViolationException;
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ExceptionInterceptor extends ResponseEntityExceptionHandler {
     @ExceptionHandler(ConstraintViolationException.class)
     public final ResponseEntity<?> handleConstraintViolationExceptions(
             ConstraintViolationException ex) {
         return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(RuntimeJsonMappingException.class)
+    public final ResponseEntity<?> handleJsonMappingExceptions(
+            RuntimeJsonMappingException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IngestQueueFullException.class)
+    public final ResponseEntity<?> handleIngestQueueFullExceptions(
+            IngestQueueFullException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public final ResponseEntity<?> handleInvalidCursorExceptions(
+            InvalidCursorException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidSortException.class)
+    public final ResponseEntity<?> handleInvalidSortExceptions(
+            InvalidSortException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ResultWindowTooLargeException.class)
+    public final ResponseEntity<?> handleResultWindowTooLargeExceptions(
+            ResultWindowTooLargeException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(TooManyBucketsException.class)
+    public final ResponseEntity<?> handleTooManyBucketsExceptions(
+            TooManyBucketsException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public final ResponseEntity<?> handleNotFoundExceptions(
+            NotFoundException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.NOT_FOUND);
+    }
+}
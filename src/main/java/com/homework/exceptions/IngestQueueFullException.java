@@ -0,0 +1,7 @@
+package com.homework.exceptions;
+
+public class IngestQueueFullException extends RuntimeException {
+    public IngestQueueFullException(String s) {
+        super(s);
+    }
+}
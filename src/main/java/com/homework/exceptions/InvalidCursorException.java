@@ -0,0 +1,7 @@
+package com.homework.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String s) {
+        super(s);
+    }
+}
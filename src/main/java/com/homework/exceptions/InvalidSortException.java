@@ -0,0 +1,7 @@
+package com.homework.exceptions;
+
+public class InvalidSortException extends RuntimeException {
+    public InvalidSortException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,67 @@
+package com.homework.exceptions;
+
+import com.homework.dto.ErrorResponseDto;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.util.stream.Collectors;
+
+/**
+ * Same responses as {@link ExceptionInterceptor} for the WebFlux controller.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionInterceptor {
+    // Failed @Valid of a body or of the query parameters
+    @ExceptionHandler(WebExchangeBindException.class)
+    public final ResponseEntity<?> handleBindExceptions(
+            WebExchangeBindException ex) {
+        var message = ex.getAllErrors().stream()
+                .map(ObjectError::getDefaultMessage)
+                .collect(Collectors.joining(", "));
+        return new ResponseEntity<>(new ErrorResponseDto(false, message), HttpStatus.BAD_REQUEST);
+    }
+
+    // Body which is not valid JSON, also in the middle of a bulk stream
+    @ExceptionHandler(ServerWebInputException.class)
+    public final ResponseEntity<?> handleInputExceptions(
+            ServerWebInputException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getReason()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IngestQueueFullException.class)
+    public final ResponseEntity<?> handleIngestQueueFullExceptions(
+            IngestQueueFullException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public final ResponseEntity<?> handleInvalidCursorExceptions(
+            InvalidCursorException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidSortException.class)
+    public final ResponseEntity<?> handleInvalidSortExceptions(
+            InvalidSortException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ResultWindowTooLargeException.class)
+    public final ResponseEntity<?> handleResultWindowTooLargeExceptions(
+            ResultWindowTooLargeException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(TooManyBucketsException.class)
+    public final ResponseEntity<?> handleTooManyBucketsExceptions(
+            TooManyBucketsException ex) {
+        return new ResponseEntity<>(new ErrorResponseDto(false, ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,7 @@
+package com.homework.exceptions;
+
+public class ResultWindowTooLargeException extends RuntimeException {
+    public ResultWindowTooLargeException(String s) {
+        super(s);
+    }
+}
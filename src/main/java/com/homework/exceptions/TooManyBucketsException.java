@@ -0,0 +1,7 @@
+package com.homework.exceptions;
+
+public class TooManyBucketsException extends RuntimeException {
+    public TooManyBucketsException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,247 @@
+package com.homework.extensions;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.model.File;
+import com.homework.repository.FileContent;
+import com.homework.repository.FileStore;
+import com.homework.service.FileQueryCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.PagedText;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import javax.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses stored contents with Tika on a fixed pool of worker threads, apart from the request threads,
+ * and writes their text and metadata to the file documents, where the q filter finds them,
+ * so cached listings are cleared as after any other write.
+ * Uploads only put the content into a queue of queue-capacity contents; contents uploaded while it is full
+ * are not parsed, so a slow parser never holds an upload back.
+ *
+ * Parsers cannot be interrupted, so the timeout is checked whenever a parser reads the content or writes text,
+ * and the text written until then is indexed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "file-storage.extract.enabled", havingValue = "true", matchIfMissing = true)
+public class ContentExtractor implements MeterBinder {
+
+    private static final String SUCCESS = "success";
+
+    // Text was longer than max-length and is indexed up to it
+    private static final String TRUNCATED = "truncated";
+
+    private static final String TIMEOUT = "timeout";
+
+    private static final String FAILURE = "failure";
+
+    private final FileStore repository;
+
+    private final FileQueryCache cache;
+
+    private final FileStorageProperties.Extract properties;
+
+    // Loads all parsers once, one instance is used by all workers
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    private final ThreadPoolExecutor workers;
+
+    private MeterRegistry registry;
+
+    private Counter rejected;
+
+    private Counter bytes;
+
+    public ContentExtractor(FileStore repository, FileQueryCache cache, FileStorageProperties properties) {
+        this.repository = repository;
+        this.cache = cache;
+        this.properties = properties.getExtract();
+        var threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(this.properties.getThreads(), this.properties.getThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(this.properties.getQueueCapacity()),
+                task -> {
+                    var thread = new Thread(task, "content-extractor-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Queues the content of the file for parsing without waiting for a worker.
+     * Extractor closes the content when it is parsed or rejected, so its chunks are kept until then.
+     *
+     * @return false if the queue is full and the content is not parsed
+     */
+    public boolean submit(String id, FileContent content) {
+        try {
+            workers.execute(() -> extract(id, content));
+            return true;
+        } catch (RejectedExecutionException e) {
+            content.close();
+            if (rejected != null) rejected.increment();
+            log.warn("Content of file {} is not extracted, {} contents are waiting", id, depth());
+            return false;
+        }
+    }
+
+    public int depth() {
+        return workers.getQueue().size();
+    }
+
+    private void extract(String id, FileContent content) {
+        var start = System.nanoTime();
+        var outcome = FAILURE;
+        try {
+            var deadline = start + properties.getTimeout().toNanos();
+            var text = new WriteOutContentHandler(properties.getMaxLength());
+            var metadata = new Metadata();
+            outcome = parse(content, new DeadlineHandler(text, deadline), metadata, deadline);
+            var result = repository.updateExtracted(id, content.getSha256(), text.toString(), toMetadata(metadata));
+            if (result != DocWriteResponse.Result.NOOP) cache.invalidateAll();
+        } catch (IOException | TikaException | SAXException | RuntimeException e) {
+            log.warn("Content of file {} was not extracted", id, e);
+        } finally {
+            content.close();
+            if (registry != null) {
+                Timer.builder("file.extract")
+                        .description("Time of parsing a content and indexing its text")
+                        .tag("outcome", outcome)
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                bytes.increment(content.getSize());
+            }
+        }
+    }
+
+    private String parse(FileContent content, DeadlineHandler handler, Metadata metadata, long deadline)
+            throws IOException, TikaException, SAXException {
+        var context = new ParseContext();
+        // Documents embedded in archives and attachments are parsed into the same text
+        context.set(Parser.class, parser);
+        try (var stream = TikaInputStream.get(new DeadlineInputStream(content.toResource().getInputStream(), deadline))) {
+            parser.parse(stream, new BodyContentHandler(handler), metadata, context);
+            return SUCCESS;
+        } catch (IOException | TikaException | SAXException e) {
+            if (handler.text.isWriteLimitReached(e)) return TRUNCATED;
+            if (System.nanoTime() - deadline > 0) return TIMEOUT;
+            throw e;
+        }
+    }
+
+    private static File.Metadata toMetadata(Metadata metadata) {
+        var type = metadata.get(Metadata.CONTENT_TYPE);
+        var mediaType = type == null ? null : MediaType.parse(type);
+        return File.Metadata.builder()
+                .type(mediaType == null ? type : mediaType.getBaseType().toString())
+                .title(metadata.get(TikaCoreProperties.TITLE))
+                .author(metadata.get(TikaCoreProperties.CREATOR))
+                .pages(metadata.getInt(PagedText.N_PAGES))
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("file.extract.queue.depth", this, ContentExtractor::depth)
+                .description("Contents waiting for a worker to parse them")
+                .register(registry);
+        rejected = Counter.builder("file.extract.rejected")
+                .description("Contents not parsed as the queue was full")
+                .register(registry);
+        bytes = Counter.builder("file.extract.bytes")
+                .description("Bytes of the parsed contents")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} contents were not extracted before shutdown", workers.shutdownNow().size());
+        }
+    }
+
+    private static class DeadlineHandler extends ContentHandlerDecorator {
+
+        private final WriteOutContentHandler text;
+
+        private final long deadline;
+
+        DeadlineHandler(WriteOutContentHandler text, long deadline) {
+            super(text);
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes) throws SAXException {
+            check();
+            super.startElement(uri, localName, name, attributes);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            check();
+            super.characters(ch, start, length);
+        }
+
+        private void check() throws SAXException {
+            if (System.nanoTime() - deadline > 0) throw new SAXException("Extraction timed out");
+        }
+    }
+
+    private static class DeadlineInputStream extends FilterInputStream {
+
+        private final long deadline;
+
+        DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            check();
+            return super.read(bytes, offset, length);
+        }
+
+        private void check() throws IOException {
+            if (System.nanoTime() - deadline > 0) throw new IOException("Extraction timed out");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.homework.extensions;
+
+import com.homework.config.FileStorageProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds the type tag of a file by the extension of its name, ignoring case.
+ * Extensions of the FileType enums and of file-storage.extensions are put into an open addressing
+ * hash table once, so classifying a name reads its chars in place without substrings or upper-casing.
+ */
+@Component
+public class FileTypeRegistry {
+
+    private static final FileType[][] BUILT_IN = {
+            AudioType.values(), DocType.values(), VideoType.values(), ImageType.values()
+    };
+
+    // Lower case extensions and their types, empty slots are null
+    private final String[] extensions;
+
+    private final String[] types;
+
+    private final int mask;
+
+    private final int maxLength;
+
+    public FileTypeRegistry(FileStorageProperties properties) {
+        var byExtension = new LinkedHashMap<String, String>();
+        for (FileType[] values : BUILT_IN) {
+            for (FileType type : values) {
+                byExtension.put(type.toString().toLowerCase(Locale.ROOT), type.getType());
+            }
+        }
+        // Configured extensions are added last, so they could also move a built-in one to another type
+        for (Map.Entry<String, List<String>> type : properties.getExtensions().entrySet()) {
+            type.getValue().forEach(extension -> byExtension.put(extension.toLowerCase(Locale.ROOT), type.getKey()));
+        }
+
+        // At most half of the slots are taken, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(byExtension.size(), 1) * 4 - 1);
+        this.extensions = new String[capacity];
+        this.types = new String[capacity];
+        this.mask = capacity - 1;
+
+        int longest = 0;
+        for (Map.Entry<String, String> entry : byExtension.entrySet()) {
+            var extension = entry.getKey();
+            int slot = hash(extension, 0, extension.length()) & mask;
+            while (extensions[slot] != null) slot = (slot + 1) & mask;
+            extensions[slot] = extension;
+            types[slot] = entry.getValue();
+            longest = Math.max(longest, extension.length());
+        }
+        this.maxLength = longest;
+    }
+
+    /**
+     * Type tag of the file, as "audio" or "document", or null if its extension is unknown.
+     */
+    public String classify(String fileName) {
+        if (fileName == null) return null;
+
+        int from = fileName.lastIndexOf('.') + 1;
+        int length = fileName.length() - from;
+        if (from == 0 || length == 0 || length > maxLength) return null;
+
+        for (int slot = hash(fileName, from, fileName.length()) & mask;
+             extensions[slot] != null;
+             slot = (slot + 1) & mask) {
+            if (extensions[slot].length() == length
+                    && extensions[slot].regionMatches(true, 0, fileName, from, length)) return types[slot];
+        }
+        return null;
+    }
+
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + Character.toLowerCase(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+}
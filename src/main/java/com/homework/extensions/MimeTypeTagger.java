@@ -0,0 +1,51 @@
+package com.homework.extensions;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.homework.config.FileStorageProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.tika.Tika;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Tags files with the top level of their MIME type, as "application" for application/zip.
+ * Tika loads its MIME registry once per instance, so one instance is shared by all uploads
+ * and results are cached per extension.
+ */
+@Component
+@ConditionalOnProperty(name = "file-storage.mime.enabled", havingValue = "true")
+public class MimeTypeTagger implements MeterBinder {
+
+    private final Tika tika = new Tika();
+
+    private final LoadingCache<String, String> tagsByExtension;
+
+    public MimeTypeTagger(FileStorageProperties properties) {
+        this.tagsByExtension = Caffeine.newBuilder()
+                .maximumSize(properties.getMime().getCacheSize())
+                .recordStats()
+                .build(this::detect);
+    }
+
+    public String tag(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        var extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return tagsByExtension.get(extension);
+    }
+
+    private String detect(String extension) {
+        // Detection by name only looks at the extension, so any name with it gives the same type
+        String mimeType = tika.detect("file." + extension);
+        return mimeType.substring(0, mimeType.indexOf('/'));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, tagsByExtension, "file.mime");
+    }
+}
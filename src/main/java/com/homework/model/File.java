@@ -3,6 +3,11 @@ package com.homework.model;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.util.List;
 
@@ -10,11 +15,74 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Document(indexName = "files")
+// Index is created with its mapping and sort by FileIndex
+@Document(indexName = File.INDEX, createIndex = false)
+@Setting(settingPath = File.SETTINGS)
 public class File {
+    // Name of the index or of the alias to the current index version
+    public static final String INDEX = "files";
+
+    // Analyzers used by the mapping, applied when the index is created
+    public static final String SETTINGS = "/elasticsearch/files-settings.json";
+
     @Id
+    @Field(type = FieldType.Keyword)
     private String id;
+
+    // Trigrams of the whole name let substring search run as a phrase query instead of a wildcard
+    @MultiField(mainField = @Field(type = FieldType.Text),
+            otherFields = {
+                    @InnerField(suffix = "keyword", type = FieldType.Keyword, normalizer = "lowercase", ignoreAbove = 256),
+                    @InnerField(suffix = "ngram", type = FieldType.Text, analyzer = "trigram", norms = false)
+            })
     private String name;
-    private Integer size;
-    private String tags;
+
+    @Field(type = FieldType.Long)
+    private long size;
+
+    // Keyword array with doc values, so exact tag filters are cached by Elasticsearch
+    @Field(type = FieldType.Keyword)
+    private List<String> tags;
+
+    // SHA-256 of the stored content, the same on every copy of a document
+    @Field(type = FieldType.Keyword)
+    private String contentHash;
+
+    // Text extracted from the stored content, searched by q and left out of listings
+    @Field(type = FieldType.Text)
+    private String content;
+
+    @Field(type = FieldType.Object)
+    private Metadata metadata;
+
+    public File(String id, String name, long size, List<String> tags) {
+        this(id, name, size, tags, null, null, null);
+    }
+
+    public File(String id, String name, long size, List<String> tags, String contentHash) {
+        this(id, name, size, tags, contentHash, null, null);
+    }
+
+    /**
+     * Properties of the stored content read by its parser.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Metadata {
+        // MIME type detected from the bytes, as application/pdf
+        @Field(type = FieldType.Keyword)
+        private String type;
+
+        @Field(type = FieldType.Text)
+        private String title;
+
+        @Field(type = FieldType.Keyword)
+        private String author;
+
+        // Count of pages of paged documents, as PDF
+        @Field(type = FieldType.Integer)
+        private Integer pages;
+    }
 }
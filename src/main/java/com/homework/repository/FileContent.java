@@ -0,0 +1,221 @@
+package com.homework.repository;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stored content of a file, read from its chunks one after another.
+ *
+ * A content found by {@link FileContentStore#find(String)} holds a reference on its chunks, so they are not deleted
+ * by a replacement or deletion of the file while it is read. The reader closes it when done.
+ */
+@Value
+public class FileContent implements AutoCloseable {
+    // Lowercase hex SHA-256 of the whole content, the same for every file with the same bytes
+    String sha256;
+
+    long size;
+
+    List<Chunk> chunks;
+
+    // Releases the references of the reader, null if the content holds none
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Runnable release;
+
+    public FileContent(String sha256, long size, List<Chunk> chunks) {
+        this(sha256, size, chunks, null);
+    }
+
+    public FileContent(String sha256, long size, List<Chunk> chunks, Runnable release) {
+        this.sha256 = sha256;
+        this.size = size;
+        this.chunks = chunks;
+        this.release = release;
+    }
+
+    @Value
+    public static class Chunk {
+        // Lowercase hex SHA-256 of the chunk, which is also the name of its file
+        String sha256;
+
+        Path path;
+
+        // Position of the first byte of the chunk in the content
+        long offset;
+
+        long length;
+    }
+
+    /**
+     * Part of a chunk file, from the position in the file.
+     */
+    @Value
+    public static class Region {
+        Path path;
+
+        long position;
+
+        long count;
+    }
+
+    /**
+     * Releases the references on the chunks once, later calls do nothing.
+     */
+    @Override
+    public void close() {
+        if (release != null) release.run();
+    }
+
+    /**
+     * Regions of the chunk files holding the bytes from start to end, exclusive, in order.
+     */
+    public List<Region> regions(long start, long end) {
+        var regions = new ArrayList<Region>();
+        for (var chunk : chunks) {
+            var from = Math.max(start, chunk.getOffset());
+            var to = Math.min(end, chunk.getOffset() + chunk.getLength());
+            if (from < to) regions.add(new Region(chunk.getPath(), from - chunk.getOffset(), to - from));
+        }
+        return regions;
+    }
+
+    /**
+     * Writes the bytes from start to end, exclusive, with one transferTo per chunk region. The file system sends
+     * them without copying to the heap only if the target is a socket or a file channel; other channels, as one
+     * over a servlet stream, are written through a buffer of the JDK.
+     */
+    public void transferTo(long start, long end, WritableByteChannel target) throws IOException {
+        for (var region : regions(start, end)) {
+            try (var channel = FileChannel.open(region.getPath())) {
+                var position = region.getPosition();
+                var remaining = region.getCount();
+                while (remaining > 0) {
+                    var count = channel.transferTo(position, remaining, target);
+                    // File is shorter than its manifest, transferTo would return 0 for ever
+                    if (count <= 0 && position >= channel.size()) {
+                        throw new IOException("Chunk " + region.getPath() + " ends before " + (position + remaining));
+                    }
+                    position += count;
+                    remaining -= count;
+                }
+            }
+        }
+    }
+
+    /**
+     * Chunk holding the byte at the position, null past the end of the content.
+     */
+    public Chunk chunkAt(long position) {
+        for (var chunk : chunks) {
+            if (position < chunk.getOffset() + chunk.getLength()) return chunk;
+        }
+        return null;
+    }
+
+    /**
+     * Content of one chunk is its file, which the servers send with zero-copy transfer,
+     * longer contents are streamed chunk by chunk through a small buffer.
+     */
+    public Resource toResource() {
+        if (chunks.size() == 1) return new FileSystemResource(chunks.get(0).getPath());
+        return new ChunksResource();
+    }
+
+    private class ChunksResource extends AbstractResource {
+
+        @Override
+        public String getDescription() {
+            return "content " + sha256;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ChunksInputStream();
+        }
+    }
+
+    // Range requests skip to their start, which opens the chunk holding it at the offset instead of reading up to it
+    private class ChunksInputStream extends InputStream {
+
+        private long position;
+
+        private int index;
+
+        private SeekableByteChannel current;
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            while (index < chunks.size()) {
+                if (current == null) current = open(chunks.get(index), 0);
+                var count = current.read(ByteBuffer.wrap(bytes, offset, length));
+                if (count > 0) {
+                    position += count;
+                    return count;
+                }
+                current.close();
+                current = null;
+                index++;
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0) return 0;
+            var target = Math.min(position + count, size);
+            close();
+            var chunk = chunkAt(target);
+            index = chunk == null ? chunks.size() : chunks.indexOf(chunk);
+            if (chunk != null) current = open(chunk, target - chunk.getOffset());
+            var skipped = target - position;
+            position = target;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) current.close();
+            current = null;
+        }
+
+        private SeekableByteChannel open(Chunk chunk, long offset) throws IOException {
+            return Files.newByteChannel(chunk.getPath()).position(offset);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.homework.repository;
+
+import com.homework.config.FileStorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Contents of the files on the local disk in file-storage.content.directory, addressed by SHA-256.
+ * Uploads are cut into chunks, each distinct chunk is stored once in chunks/ and every file has a manifest
+ * in files/ listing the hashes of its chunks, so the same document uploaded under many names takes the space of one.
+ *
+ * Chunks are counted by the manifests and the open readers referring to them and deleted with the last one.
+ * The counts are kept in memory and rebuilt from the manifests on start, which also deletes chunks left
+ * by an interrupted upload. A manifest is moved in place when the upload is complete, and a reader holds
+ * its chunks until it closes the content, so it reads either the previous content or the new one to the end.
+ */
+@Slf4j
+@Component
+public class FileContentStore {
+
+    // Ids become file names, so anything which could leave the directory is rejected
+    private static final Pattern ID = Pattern.compile("[\\w-]+");
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    // Suffix of files being written, never a valid id or hash
+    private static final String TEMP_SUFFIX = ".upload";
+
+    // Blocking uploads are read in pieces of this size, chunks are cut from them
+    private static final int READ_SIZE = 64 * 1024;
+
+    // Random value per byte for the rolling hash of the chunk boundaries. Seed is fixed,
+    // as other values would cut the same content elsewhere after a restart and nothing would be deduplicated
+    private static final long[] GEAR = new SplittableRandom(0x5eed_c0de_5eed_c0deL).longs(256).toArray();
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path directory;
+
+    private final Path files;
+
+    private final Path chunks;
+
+    private final int minChunkSize;
+
+    private final int maxChunkSize;
+
+    // Boundary is where the top bits of the rolling hash are all zero, which depend on the last 64 bytes
+    private final long boundaryMask;
+
+    // Count of manifests and open readers referring to each stored chunk
+    private final ConcurrentHashMap<String, Integer> references = new ConcurrentHashMap<>();
+
+    // Replacing or deleting a manifest and releasing its chunks happen under the lock of its id.
+    // Locks are not monitors, so a virtual thread waiting for one is not pinned
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    // Writing a chunk and deleting it with its last reference happen under the lock of its hash, taken after
+    // the lock of an id, never before. The map only updates the counts, its bins are not held over disk I/O
+    private final Lock[] chunkLocks = new Lock[LOCK_STRIPES];
+
+    public FileContentStore(FileStorageProperties properties) {
+        var content = properties.getContent();
+        this.directory = content.getDirectory().toAbsolutePath();
+        this.files = directory.resolve("files");
+        this.chunks = directory.resolve("chunks");
+
+        var chunkSize = Integer.highestOneBit((int) Math.min(content.getChunkSize().toBytes(), 1 << 30));
+        if (chunkSize < 64) throw new IllegalArgumentException("Chunk size must be at least 64 bytes");
+        // Fixed chunks are cut only when the buffer is full
+        this.minChunkSize = content.isContentDefinedChunks() ? chunkSize / 4 : chunkSize;
+        this.maxChunkSize = content.isContentDefinedChunks() ? chunkSize * 4 : chunkSize;
+        var bits = Integer.numberOfTrailingZeros(chunkSize);
+        this.boundaryMask = ((1L << bits) - 1) << (Long.SIZE - bits);
+
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+        for (int i = 0; i < chunkLocks.length; i++) chunkLocks[i] = new ReentrantLock();
+        try {
+            countReferences();
+            importPlainContents();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Contents in " + directory + " could not be read", e);
+        }
+    }
+
+    /**
+     * Chunks the stream through a buffer of at most four chunk sizes, whatever the size of the content,
+     * and writes the chunks which are not stored yet.
+     */
+    public FileContent write(String id, InputStream content) throws IOException {
+        checkId(id);
+        try (var writer = new ChunkWriter()) {
+            var bytes = new byte[READ_SIZE];
+            int count;
+            while ((count = content.read(bytes)) != -1) {
+                writer.write(bytes, 0, count);
+            }
+            return commit(id, writer);
+        }
+    }
+
+    /**
+     * Chunks the buffers as they arrive and releases them, emits the stored content.
+     */
+    public Mono<FileContent> write(String id, Flux<DataBuffer> content) {
+        return Mono.fromCallable(() -> {
+                    checkId(id);
+                    return new ChunkWriter();
+                })
+                .flatMap(writer -> content
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(buffer -> {
+                            try {
+                                var bytes = new byte[buffer.readableByteCount()];
+                                buffer.read(bytes);
+                                writer.write(bytes, 0, bytes.length);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                        .then(Mono.fromCallable(() -> commit(id, writer)))
+                        .doFinally(signal -> writer.close()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Stores the content of another file for the file without reading it again, if the other file still has it.
+     *
+     * @return empty if the source file has no content with the hash
+     */
+    public Optional<FileContent> copy(String sourceId, String id, String sha256) throws IOException {
+        checkId(id);
+        if (!ID.matcher(sourceId).matches() || !SHA256.matcher(sha256).matches()) return Optional.empty();
+
+        FileContent content;
+        var lock = lock(sourceId);
+        lock.lock();
+        try {
+            // Chunks of a manifest are referenced, so they cannot be deleted before they are counted again
+            content = read(sourceId).filter(source -> source.getSha256().equals(sha256)).orElse(null);
+            if (content == null) return Optional.empty();
+            content.getChunks().forEach(chunk -> references.merge(chunk.getSha256(), 1, Integer::sum));
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            replaceManifest(id, content);
+        } catch (IOException | RuntimeException e) {
+            release(content);
+            throw e;
+        }
+        return Optional.of(content);
+    }
+
+    /**
+     * Content of the file holding a reference on its chunks, which the caller releases by closing it.
+     */
+    public Optional<FileContent> find(String id) {
+        if (!ID.matcher(id).matches()) return Optional.empty();
+        var lock = lock(id);
+        lock.lock();
+        try {
+            // Chunks of a manifest are referenced, so they are still stored when the reader counts itself
+            return read(id).map(this::hold);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same content holding a reference on its chunks, empty if any of them is deleted by now.
+     * Chunks are addressed by their hash, so a chunk referred to by any other file has the same bytes.
+     */
+    public Optional<FileContent> lease(FileContent content) {
+        var held = new ArrayList<String>();
+        for (var chunk : content.getChunks()) {
+            if (references.computeIfPresent(chunk.getSha256(), (key, count) -> count + 1) == null) {
+                held.forEach(this::release);
+                return Optional.empty();
+            }
+            held.add(chunk.getSha256());
+        }
+        return Optional.of(withRelease(content));
+    }
+
+    public void delete(String id) {
+        if (!ID.matcher(id).matches()) return;
+        var lock = lock(id);
+        lock.lock();
+        try {
+            var content = read(id);
+            if (content.isEmpty()) return;
+            Files.deleteIfExists(manifestPath(id));
+            release(content.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteAll(Collection<String> ids) {
+        ids.forEach(this::delete);
+    }
+
+    /**
+     * Ids of the files with a stored content, read from the directory as the stream is consumed.
+     * The stream holds the directory open until it is closed.
+     */
+    public Stream<String> ids() {
+        if (!Files.isDirectory(files)) return Stream.empty();
+        try {
+            return Files.walk(files)
+                    .filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> !name.endsWith(TEMP_SUFFIX));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileContent commit(String id, ChunkWriter writer) throws IOException {
+        var content = writer.finish();
+        replaceManifest(id, content);
+        writer.committed = true;
+        return content;
+    }
+
+    // Chunks of the new content are already referenced, the previous content releases its own
+    private void replaceManifest(String id, FileContent content) throws IOException {
+        var lock = lock(id);
+        lock.lock();
+        try {
+            var previous = read(id);
+            var target = manifestPath(id);
+            var temp = createTemp(target);
+            try {
+                Files.writeString(temp, toManifest(content));
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            previous.ifPresent(this::release);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a reference to the chunk, writing it first if it is not stored yet.
+     * The chunk is written to a temporary file outside of the chunk lock and moved in place under it.
+     */
+    private void acquire(String sha256, byte[] bytes, int length) throws IOException {
+        var path = chunkPath(sha256);
+        var temp = references.containsKey(sha256) ? null : writeTemp(path, bytes, length);
+        var lock = chunkLock(sha256);
+        lock.lock();
+        try {
+            if (references.computeIfPresent(sha256, (key, count) -> count + 1) != null) return;
+            // Last reference was released since the check
+            var source = temp != null ? temp : writeTemp(path, bytes, length);
+            Files.move(source, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            references.put(sha256, 1);
+        } finally {
+            lock.unlock();
+            if (temp != null) Files.deleteIfExists(temp);
+        }
+    }
+
+    private FileContent hold(FileContent content) {
+        content.getChunks().forEach(chunk -> references.merge(chunk.getSha256(), 1, Integer::sum));
+        return withRelease(content);
+    }
+
+    private FileContent withRelease(FileContent content) {
+        var released = new AtomicBoolean();
+        return new FileContent(content.getSha256(), content.getSize(), content.getChunks(), () -> {
+            if (released.compareAndSet(false, true)) release(content);
+        });
+    }
+
+    private void release(FileContent content) {
+        content.getChunks().forEach(chunk -> release(chunk.getSha256()));
+    }
+
+    // Count drops to zero in the map first, so a lease cannot take the chunk while its file is deleted
+    private void release(String sha256) {
+        var lock = chunkLock(sha256);
+        lock.lock();
+        try {
+            // Only a release under this lock removes a count, so one found here is still there below
+            if (!references.containsKey(sha256)) return;
+            if (references.computeIfPresent(sha256, (key, count) -> count > 1 ? count - 1 : null) != null) return;
+            Files.deleteIfExists(chunkPath(sha256));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Manifest is the hash and size of the content on the first line, then the hash and length of every chunk
+    private static String toManifest(FileContent content) {
+        var manifest = new StringBuilder(content.getSha256()).append(' ').append(content.getSize()).append('\n');
+        for (var chunk : content.getChunks()) {
+            manifest.append(chunk.getSha256()).append(' ').append(chunk.getLength()).append('\n');
+        }
+        return manifest.toString();
+    }
+
+    private Optional<FileContent> read(String id) throws IOException {
+        var path = manifestPath(id);
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+        } catch (NoSuchFileException e) {
+            // Deleted since the check
+            return Optional.empty();
+        }
+
+        var header = lines.get(0).split(" ");
+        var chunkList = new ArrayList<FileContent.Chunk>(lines.size() - 1);
+        long offset = 0;
+        for (var line : lines.subList(1, lines.size())) {
+            var fields = line.split(" ");
+            var length = Long.parseLong(fields[1]);
+            chunkList.add(new FileContent.Chunk(fields[0], chunkPath(fields[0]), offset, length));
+            offset += length;
+        }
+        return Optional.of(new FileContent(header[0], Long.parseLong(header[1]), List.copyOf(chunkList)));
+    }
+
+    private void countReferences() throws IOException {
+        if (Files.isDirectory(files)) {
+            try (var paths = Files.walk(files)) {
+                for (var path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    var name = path.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.delete(path);
+                        continue;
+                    }
+                    read(name).ifPresent(content -> content.getChunks()
+                            .forEach(chunk -> references.merge(chunk.getSha256(), 1, Integer::sum)));
+                }
+            }
+        }
+
+        var orphans = 0;
+        if (Files.isDirectory(chunks)) {
+            try (var paths = Files.walk(chunks)) {
+                for (var path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    if (!references.containsKey(path.getFileName().toString())) {
+                        Files.delete(path);
+                        orphans++;
+                    }
+                }
+            }
+        }
+        if (orphans > 0) log.info("Deleted {} chunks without a file in {}", orphans, chunks);
+    }
+
+    // Contents stored before chunking as one plain file per id, in directories of the first two characters
+    private void importPlainContents() throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        List<Path> plain;
+        try (var paths = Files.list(directory)) {
+            plain = paths.filter(path -> path.getFileName().toString().length() <= 2 && Files.isDirectory(path))
+                    .collect(Collectors.toList());
+        }
+        for (var subdirectory : plain) {
+            try (var paths = Files.list(subdirectory)) {
+                for (var path : paths.collect(Collectors.toList())) {
+                    var name = path.getFileName().toString();
+                    if (ID.matcher(name).matches() && Files.isRegularFile(path)) {
+                        try (var content = Files.newInputStream(path)) {
+                            write(name, content);
+                        }
+                    }
+                    Files.delete(path);
+                }
+            }
+            Files.delete(subdirectory);
+            log.info("Imported contents of {} into chunks", subdirectory);
+        }
+    }
+
+    private Lock lock(String id) {
+        return locks[Math.floorMod(id.hashCode(), locks.length)];
+    }
+
+    private Lock chunkLock(String sha256) {
+        return chunkLocks[Math.floorMod(sha256.hashCode(), chunkLocks.length)];
+    }
+
+    private static void checkId(String id) {
+        if (!ID.matcher(id).matches()) throw new IllegalArgumentException("Id is not valid for a content: " + id);
+    }
+
+    // First two characters of the id or hash spread the files over subdirectories
+    private Path manifestPath(String id) {
+        return files.resolve(id.substring(0, Math.min(2, id.length()))).resolve(id);
+    }
+
+    private Path chunkPath(String sha256) {
+        return chunks.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static Path createTemp(Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        return Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_SUFFIX);
+    }
+
+    private static Path writeTemp(Path target, byte[] bytes, int length) throws IOException {
+        var temp = createTemp(target);
+        try (var out = Files.newOutputStream(temp)) {
+            out.write(bytes, 0, length);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        var hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Cuts the bytes written to it into chunks and stores them. Chunks of an upload which is not committed,
+     * as one failed on the way, are released on close.
+     */
+    private class ChunkWriter implements AutoCloseable {
+
+        private final MessageDigest whole = sha256();
+
+        private final MessageDigest digest = sha256();
+
+        private final byte[] buffer = new byte[maxChunkSize];
+
+        private final List<FileContent.Chunk> written = new ArrayList<>();
+
+        private int length;
+
+        private long offset;
+
+        private long rollingHash;
+
+        private boolean committed;
+
+        void write(byte[] bytes, int from, int count) throws IOException {
+            whole.update(bytes, from, count);
+            for (int i = from; i < from + count; i++) {
+                buffer[length++] = bytes[i];
+                rollingHash = (rollingHash << 1) + GEAR[bytes[i] & 0xff];
+                if (length == buffer.length || length >= minChunkSize && (rollingHash & boundaryMask) == 0) {
+                    cut();
+                }
+            }
+        }
+
+        FileContent finish() throws IOException {
+            cut();
+            return new FileContent(hex(whole.digest()), offset, List.copyOf(written));
+        }
+
+        private void cut() throws IOException {
+            if (length == 0) return;
+            digest.update(buffer, 0, length);
+            var sha256 = hex(digest.digest());
+            acquire(sha256, buffer, length);
+            written.add(new FileContent.Chunk(sha256, chunkPath(sha256), offset, length));
+            offset += length;
+            length = 0;
+            rollingHash = 0;
+        }
+
+        @Override
+        public void close() {
+            if (!committed) written.forEach(chunk -> release(chunk.getSha256()));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.homework.repository;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+public class FileFilter {
+    // Part of the file name, ignoring case, or words all found in the extracted text
+    String query;
+
+    // Query matches the file name only, so files are not changed in bulk for words of their text
+    boolean nameOnly;
+
+    // Tags which the file must all have
+    List<String> tags;
+
+    // SHA-256 of the stored content, which finds all copies of a document
+    String contentHash;
+
+    // Bounds of the size in bytes, both inclusive, unbounded if null
+    Long minSize;
+
+    Long maxSize;
+}
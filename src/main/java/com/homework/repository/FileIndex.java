@@ -0,0 +1,83 @@
+package com.homework.repository;
+
+import com.homework.config.ConditionalOnElasticsearchStore;
+import com.homework.model.File;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ResourceUtil;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Creates versions of the file index from the {@link File} settings and mapping with one request.
+ * The index is sorted by id, and Elasticsearch checks the sort field against the mapping when the index is created,
+ * so the repository, which puts the mapping after creating the index, does not create it.
+ *
+ * The missing index is created once the application has started, before the other runners as the migration,
+ * so building the context does not need a cluster.
+ */
+@Slf4j
+@Component
+@ConditionalOnElasticsearchStore
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FileIndex implements ApplicationRunner {
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final RestHighLevelClient client;
+
+    private final ElasticsearchOperations operations;
+
+    public FileIndex(RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.client = client;
+        this.operations = operations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        createIfMissing();
+    }
+
+    /**
+     * Creates the first version of the index with the {@link File#INDEX} alias if there is neither an index
+     * nor an alias with this name yet.
+     */
+    public void createIfMissing() throws IOException {
+        if (client.indices().exists(new GetIndexRequest(File.INDEX), RequestOptions.DEFAULT)) return;
+        var name = newVersion();
+        client.indices().create(request(name).alias(new Alias(File.INDEX)), RequestOptions.DEFAULT);
+        log.info("Created index {} with alias {}", name, File.INDEX);
+    }
+
+    /**
+     * Creates an empty version of the index without the alias, returns its name.
+     */
+    public String create() throws IOException {
+        var name = newVersion();
+        client.indices().create(request(name), RequestOptions.DEFAULT);
+        return name;
+    }
+
+    private CreateIndexRequest request(String name) {
+        return new CreateIndexRequest(name)
+                .settings(ResourceUtil.readFileFromClasspath(File.SETTINGS), XContentType.JSON)
+                .mapping(operations.indexOps(File.class).createMapping());
+    }
+
+    private static String newVersion() {
+        return File.INDEX + "-" + LocalDateTime.now().format(VERSION_FORMAT);
+    }
+}
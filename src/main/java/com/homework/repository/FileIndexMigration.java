@@ -0,0 +1,153 @@
+package com.homework.repository;
+
+import com.homework.config.ConditionalOnElasticsearchStore;
+import com.homework.model.File;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.tasks.GetTaskRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Copies all files into a new index created by {@link FileIndex} from the current {@link File} settings and mapping
+ * and points the {@link File#INDEX} alias to it. The previous index is deleted.
+ *
+ * Run once with --file-storage.index.migrate=true, the application stops after the migration.
+ */
+@Slf4j
+@Component
+@ConditionalOnElasticsearchStore
+@ConditionalOnProperty(prefix = "file-storage.index", name = "migrate", havingValue = "true")
+public class FileIndexMigration implements ApplicationRunner {
+
+    // Converts tags stored as one string joined with spaces to the keyword array
+    static final String CONVERT_SCRIPT =
+            "if (ctx._source.tags instanceof String) { " +
+                "ctx._source.tags = ctx._source.tags == '' ? [] : ctx._source.tags.splitOnToken(' '); " +
+            "}";
+
+    private final RestHighLevelClient client;
+
+    private final ElasticsearchOperations operations;
+
+    private final FileIndex fileIndex;
+
+    private final ConfigurableApplicationContext context;
+
+    public FileIndexMigration(RestHighLevelClient client,
+                              ElasticsearchOperations operations,
+                              FileIndex fileIndex,
+                              ConfigurableApplicationContext context) {
+        this.client = client;
+        this.operations = operations;
+        this.fileIndex = fileIndex;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try {
+            migrate();
+        } finally {
+            context.close();
+        }
+    }
+
+    public void migrate() throws IOException, InterruptedException {
+        if (!client.indices().exists(new GetIndexRequest(File.INDEX), RequestOptions.DEFAULT)) {
+            log.info("There is no index {} to migrate", File.INDEX);
+            return;
+        }
+
+        var aliased = client.indices()
+                .getAlias(new GetAliasesRequest(File.INDEX), RequestOptions.DEFAULT)
+                .getAliases()
+                .keySet();
+        // Index created before the alias was introduced has the name of the alias
+        var source = aliased.isEmpty() ? File.INDEX : aliased.iterator().next();
+        var target = fileIndex.create();
+
+        // Writes to the source index would be lost after the copy, so reject them instead
+        setWriteBlock(source, true);
+        try {
+            copy(source, target);
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            setWriteBlock(source, false);
+            throw e;
+        }
+
+        var aliases = new IndicesAliasesRequest()
+                .addAliasAction(AliasActions.add().index(target).alias(File.INDEX));
+        if (aliased.isEmpty()) {
+            aliases.addAliasAction(AliasActions.removeIndex().index(source));
+        } else {
+            aliases.addAliasAction(AliasActions.remove().index(source).alias(File.INDEX));
+        }
+        client.indices().updateAliases(aliases, RequestOptions.DEFAULT);
+
+        if (!aliased.isEmpty()) {
+            client.indices().delete(new DeleteIndexRequest(source), RequestOptions.DEFAULT);
+        }
+        log.info("Migrated index {} to {}", source, target);
+    }
+
+    private void copy(String source, String target) throws IOException, InterruptedException {
+        // Refresh of the target is not needed until all documents are copied
+        updateSettings(target, Settings.builder().put("index.refresh_interval", "-1").build());
+
+        var reindex = new ReindexRequest()
+                .setSourceIndices(source)
+                .setDestIndex(target)
+                .setScript(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+                        CONVERT_SCRIPT, Collections.emptyMap()));
+        var task = client.submitReindexTask(reindex, RequestOptions.DEFAULT).getTask().split(":");
+        var request = new GetTaskRequest(task[0], Long.parseLong(task[1]));
+        while (!client.tasks().get(request, RequestOptions.DEFAULT)
+                .orElseThrow(() -> new IllegalStateException("Reindex task is lost"))
+                .isCompleted()) {
+            Thread.sleep(1000);
+        }
+
+        updateSettings(target, Settings.builder().putNull("index.refresh_interval").build());
+        operations.indexOps(IndexCoordinates.of(target)).refresh();
+
+        var expected = count(source);
+        var copied = count(target);
+        if (expected != copied) {
+            throw new IllegalStateException(String.format(
+                    "Only %d of %d files were copied from %s to %s", copied, expected, source, target));
+        }
+    }
+
+    private void setWriteBlock(String index, boolean block) throws IOException {
+        updateSettings(index, Settings.builder().put("index.blocks.write", block).build());
+    }
+
+    private void updateSettings(String index, Settings settings) throws IOException {
+        client.indices().putSettings(new UpdateSettingsRequest(index).settings(settings), RequestOptions.DEFAULT);
+    }
+
+    private long count(String index) throws IOException {
+        return client.count(new CountRequest(index), RequestOptions.DEFAULT).getCount();
+    }
+}
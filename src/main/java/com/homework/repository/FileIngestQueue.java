@@ -0,0 +1,193 @@
+package com.homework.repository;
+
+import com.homework.config.ConditionalOnElasticsearchStore;
+import com.homework.config.FileStorageProperties;
+import com.homework.exceptions.IngestQueueFullException;
+import com.homework.model.File;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for uploaded files. Files are collected by a {@link BulkProcessor}
+ * and indexed with one _bulk request per flush. At most queue-capacity files are kept
+ * in memory, uploads above it are rejected with {@link IngestQueueFullException}.
+ *
+ * The processor blocks the thread adding to a full bulk while concurrent-requests bulks are being sent,
+ * so uploads only put the file in a queue and one consumer thread adds them to the processor.
+ *
+ * Items rejected with 429 are retried by the processor with an exponential backoff. Files still failing after it
+ * were already answered with their id, they are logged and counted in file.ingest.failed.
+ */
+@Slf4j
+@Component
+@ConditionalOnElasticsearchStore
+@ConditionalOnProperty(prefix = "file-storage.ingest", name = "async", havingValue = "true")
+public class FileIngestQueue implements MeterBinder {
+
+    private final ElasticsearchOperations operations;
+
+    private final FileStorageProperties.Ingest properties;
+
+    private final Semaphore capacity;
+
+    private final BulkProcessor processor;
+
+    // Bounded by the permits, so an upload holding one always finds room
+    private final BlockingQueue<IndexRequest> pending;
+
+    private final Thread consumer;
+
+    private volatile boolean closed;
+
+    private final Map<Long, Long> flushStarts = new ConcurrentHashMap<>();
+
+    private Timer flushTimer;
+
+    private Counter failedCounter;
+
+    public FileIngestQueue(RestHighLevelClient client,
+                           ElasticsearchOperations operations,
+                           FileStorageProperties properties,
+                           RequestOptions options) {
+        this.operations = operations;
+        this.properties = properties.getIngest();
+        this.capacity = new Semaphore(this.properties.getQueueCapacity());
+        this.pending = new ArrayBlockingQueue<>(this.properties.getQueueCapacity());
+        this.processor = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, options, listener),
+                new FlushListener())
+                .setBulkActions(this.properties.getFlushActions())
+                .setFlushInterval(TimeValue.timeValueMillis(this.properties.getFlushInterval().toMillis()))
+                .setConcurrentRequests(this.properties.getConcurrentRequests())
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff())
+                .build();
+        this.consumer = new Thread(this::consume, "file-ingest");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Queues the file without waiting, the permit is released when its bulk is sent or fails.
+     */
+    public void enqueue(File file) throws IngestQueueFullException {
+        if (!capacity.tryAcquire()) throw new IngestQueueFullException("Too many files are waiting for indexing");
+        try {
+            pending.add(FileStorageRepoCustomImpl.indexRequest(operations, file));
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    public int depth() {
+        return properties.getQueueCapacity() - capacity.availablePermits();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("file.ingest.queue.depth", this, FileIngestQueue::depth)
+                .description("Files waiting for indexing")
+                .register(registry);
+        flushTimer = Timer.builder("file.ingest.flush")
+                .description("Time of the _bulk requests flushing the queue")
+                .register(registry);
+        failedCounter = Counter.builder("file.ingest.failed")
+                .description("Files accepted by an upload whose indexing failed")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        consumer.join(properties.getShutdownTimeout().toMillis());
+        var rest = new ArrayList<IndexRequest>();
+        pending.drainTo(rest);
+        rest.forEach(this::add);
+        if (!processor.awaitClose(properties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} files were not indexed before shutdown", depth());
+        }
+    }
+
+    private void consume() {
+        try {
+            while (!closed) {
+                var request = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (request != null) add(request);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits while concurrent-requests bulks are being sent and this one is full
+    private void add(IndexRequest request) {
+        try {
+            processor.add(request);
+        } catch (RuntimeException e) {
+            capacity.release();
+            failed(1);
+            log.error("Failed to queue file {} for indexing", request.id(), e);
+        }
+    }
+
+    private void failed(long files) {
+        if (failedCounter != null) failedCounter.increment(files);
+    }
+
+    private class FlushListener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            flushStarts.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            if (response.hasFailures()) {
+                failed(Arrays.stream(response.getItems()).filter(BulkItemResponse::isFailed).count());
+                log.error("Failed to index files: {}", response.buildFailureMessage());
+            }
+            completed(executionId, request);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            failed(request.numberOfActions());
+            log.error("Failed to index {} files", request.numberOfActions(), failure);
+            completed(executionId, request);
+        }
+
+        private void completed(long executionId, BulkRequest request) {
+            var start = flushStarts.remove(executionId);
+            if (flushTimer != null && start != null) {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            capacity.release(request.numberOfActions());
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.homework.repository;
+
+import com.homework.model.File;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
+
+/**
+ * Requests to the file index, shared by the blocking and the reactive repositories.
+ */
+public final class FileRequests {
+
+    private static final String READ_TAGS =
+            "def tags = ctx._source.tags == null ? new ArrayList() : ctx._source.tags;";
+
+    private static final String ADD_TAGS_SCRIPT = READ_TAGS +
+            "boolean changed = false;" +
+            "for (tag in params.tags) { " +
+                "if (!tags.contains(tag)) { tags.add(tag); changed = true; } " +
+            "}" +
+            "if (changed) { ctx._source.tags = tags; } else { ctx.op = params.noop; }";
+
+    private static final String REMOVE_TAGS_SCRIPT = READ_TAGS +
+            "if (tags.containsAll(params.tags)) { " +
+                "tags.removeAll(params.tags); " +
+                "ctx._source.tags = tags; " +
+            "} else { ctx.op = params.noop; }";
+
+    // Text of a replaced content is not written over the text of the new one
+    private static final String EXTRACTED_SCRIPT =
+            "if (ctx._source.contentHash == params.contentHash) { " +
+                "ctx._source.content = params.content; " +
+                "ctx._source.metadata = params.metadata; " +
+            "} else { ctx.op = 'none'; }";
+
+    // Same scripts skip the file with different op names in _update and _update_by_query
+    private static final String UPDATE_NOOP = "none";
+
+    private static final String BY_QUERY_NOOP = "noop";
+
+    public static final String TAGS_AGGREGATION = "tags";
+
+    public static final String SIZES_AGGREGATION = "sizes";
+
+    private static final String TOO_MANY_BUCKETS = "too_many_buckets_exception";
+
+    public static final String TOO_MANY_BUCKETS_MESSAGE = "Size histogram has more ranges than search.max_buckets of "
+            + "Elasticsearch, use a wider interval or a narrower size range";
+
+    public static final String UPDATE_BY_QUERY_ACTION = "indices:data/write/update/byquery";
+
+    public static final String DELETE_BY_QUERY_ACTION = "indices:data/write/delete/byquery";
+
+    // Run as a task and return its id at once; files changed meanwhile are skipped and counted as conflicts
+    public static final Map<String, String> TASK_PARAMS = Map.of(
+            "wait_for_completion", "false",
+            "conflicts", "proceed",
+            "refresh", "true",
+            "slices", "auto");
+
+    // Keyword copy of the document id, _id itself has no doc values to sort on
+    private static final String ID_FIELD = "id";
+
+    // Extracted text, which can be much longer than the rest of the document
+    private static final String CONTENT_FIELD = "content";
+
+    // Gram length of the name.ngram analyzer
+    private static final int TRIGRAM = 3;
+
+    // Concurrent tag updates of the same file are retried on version conflict
+    private static final int RETRY_ON_CONFLICT = 3;
+
+    private FileRequests() {
+    }
+
+    // Unique id is the only sort key, so pages are stable and the last id continues the listing.
+    // The index is sorted by id as well, so a search which does not count all hits stops after the page
+    public static SearchSourceBuilder listing(FileFilter filter, int size, int trackTotalHitsUpTo) {
+        return listing(filter, Sort.unsorted(), size, trackTotalHitsUpTo);
+    }
+
+    // Files with the same sort values are ordered by id, and the sort values of the last file continue the listing
+    public static SearchSourceBuilder listing(FileFilter filter, Sort sort, int size, int trackTotalHitsUpTo) {
+        var source = new SearchSourceBuilder()
+                .query(filterQuery(filter))
+                .size(size)
+                .trackTotalHitsUpTo(trackTotalHitsUpTo)
+                .fetchSource(null, new String[]{CONTENT_FIELD});
+        sort.forEach(order -> source.sort(order.getProperty(), order.isAscending() ? SortOrder.ASC : SortOrder.DESC));
+        if (sort.getOrderFor(ID_FIELD) == null) source.sort(ID_FIELD, SortOrder.ASC);
+        return source;
+    }
+
+    public static SearchSourceBuilder tagCounts(FileFilter filter, int size) {
+        return new SearchSourceBuilder()
+                .query(filterQuery(filter))
+                .size(0)
+                .trackTotalHits(false)
+                .aggregation(AggregationBuilders.terms(TAGS_AGGREGATION).field("tags").size(size));
+    }
+
+    // Empty buckets are left out, so a small interval over a wide range of sizes does not make a bucket per step
+    public static SearchSourceBuilder sizeHistogram(FileFilter filter, long interval) {
+        return new SearchSourceBuilder()
+                .query(filterQuery(filter))
+                .size(0)
+                .trackTotalHits(false)
+                .aggregation(AggregationBuilders.histogram(SIZES_AGGREGATION)
+                        .field("size")
+                        .interval(interval)
+                        .minDocCount(1));
+    }
+
+    public static UpdateRequest addTags(String index, String id, Collection<String> tags) {
+        return update(index, id, ADD_TAGS_SCRIPT, tags);
+    }
+
+    public static UpdateRequest removeTags(String index, String id, Collection<String> tags) {
+        return update(index, id, REMOVE_TAGS_SCRIPT, tags);
+    }
+
+    // Listing shows the size and hash of the stored content when the upload returns.
+    // Text of the previous content is cleared until the new one is extracted
+    public static UpdateRequest updateContent(String index, String id, long size, String contentHash) {
+        var doc = new HashMap<String, Object>();
+        doc.put("size", size);
+        doc.put("contentHash", contentHash);
+        doc.put(CONTENT_FIELD, null);
+        doc.put("metadata", null);
+        return new UpdateRequest(index, id)
+                .doc(doc)
+                .retryOnConflict(RETRY_ON_CONFLICT)
+                .setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+    }
+
+    public static UpdateRequest updateExtracted(String index, String id, String contentHash,
+                                                String content, File.Metadata metadata) {
+        var params = new HashMap<String, Object>();
+        params.put("contentHash", contentHash);
+        params.put("content", content);
+        params.put("metadata", metadata == null ? null : metadataSource(metadata));
+        return new UpdateRequest(index, id)
+                .script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, EXTRACTED_SCRIPT, params))
+                .retryOnConflict(RETRY_ON_CONFLICT);
+    }
+
+    // Files which already have all the tags are not matched, so they are neither rewritten nor scrolled twice
+    public static String addTagsByQuery(FileFilter filter, Collection<String> tags) {
+        return updateByQuery(filterQuery(filter).mustNot(allTags(tags)), ADD_TAGS_SCRIPT, tags);
+    }
+
+    // Only files with all the tags are matched, as the script removes them only from such files
+    public static String removeTagsByQuery(FileFilter filter, Collection<String> tags) {
+        return updateByQuery(filterQuery(filter).filter(allTags(tags)), REMOVE_TAGS_SCRIPT, tags);
+    }
+
+    public static String deleteByQuery(FileFilter filter) {
+        return byQuery(filterQuery(filter), null);
+    }
+
+    // Deleted file is gone from the search when the response comes, without another refresh request
+    public static DeleteRequest delete(String index, String id) {
+        return new DeleteRequest(index, id).setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+    }
+
+    public static IndexRequest index(String index, ElasticsearchConverter converter, File file) {
+        return new IndexRequest(index)
+                .id(file.getId())
+                .source(converter.mapObject(file));
+    }
+
+    // Get is real time, so files not refreshed yet are found too
+    public static MultiGetRequest multiGet(String index, Collection<String> ids) {
+        var request = new MultiGetRequest();
+        ids.forEach(id -> request.add(new MultiGetRequest.Item(index, id)
+                .fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE)));
+        return request;
+    }
+
+    /**
+     * Ids of a _mget request which have a file. Failed items count as existing,
+     * so the content of a file which could not be read is kept.
+     */
+    public static Set<String> existingIds(MultiGetItemResponse[] items) {
+        var ids = new HashSet<String>();
+        for (MultiGetItemResponse item : items) {
+            if (item.isFailed() || item.getResponse().isExists()) ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Results by id of a _bulk request of tag updates or deletes. Both are idempotent,
+     * so a request with a failed item can be sent again as a whole.
+     */
+    public static Map<String, DocWriteResponse.Result> writeResults(BulkItemResponse[] items) {
+        var results = new LinkedHashMap<String, DocWriteResponse.Result>();
+        for (BulkItemResponse item : items) {
+            if (!item.isFailed()) {
+                results.put(item.getId(), item.getResponse().getResult());
+            } else if (item.status() == RestStatus.NOT_FOUND) {
+                results.put(item.getId(), DocWriteResponse.Result.NOT_FOUND);
+            } else {
+                throw new DataAccessResourceFailureException("File " + item.getId()
+                        + " was not written: " + item.getFailureMessage(), item.getFailure().getCause());
+            }
+        }
+        return results;
+    }
+
+    // Keys of a histogram over a long field are whole numbers of bytes, parsed as doubles
+    // Histogram over search.max_buckets fails the whole search, its cause is one of the parsed root causes
+    public static boolean isTooManyBuckets(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(TOO_MANY_BUCKETS)) return true;
+            for (Throwable suppressed : cause.getSuppressed()) {
+                if (suppressed.getMessage() != null && suppressed.getMessage().contains(TOO_MANY_BUCKETS)) return true;
+            }
+        }
+        return false;
+    }
+
+    public static Map<Long, Long> sizeCounts(Histogram histogram) {
+        var counts = new LinkedHashMap<Long, Long>();
+        histogram.getBuckets().forEach(bucket -> counts.put(((Number) bucket.getKey()).longValue(), bucket.getDocCount()));
+        return counts;
+    }
+
+    private static BoolQueryBuilder filterQuery(FileFilter filter) {
+        var query = boolQuery();
+        // One term filter per tag, so files must have all of them
+        if (filter.getTags() != null) filter.getTags().forEach(tag -> query.filter(termQuery("tags", tag)));
+        if (filter.getQuery() != null) {
+            query.filter(filter.isNameOnly() ? nameFilter(filter.getQuery()) : textFilter(filter.getQuery()));
+        }
+        if (filter.getContentHash() != null) query.filter(termQuery("contentHash", filter.getContentHash()));
+        if (filter.getMinSize() != null || filter.getMaxSize() != null) {
+            query.filter(rangeQuery("size").gte(filter.getMinSize()).lte(filter.getMaxSize()));
+        }
+        return query;
+    }
+
+    private static BoolQueryBuilder allTags(Collection<String> tags) {
+        var query = boolQuery();
+        tags.forEach(tag -> query.filter(termQuery("tags", tag)));
+        return query;
+    }
+
+    // Name contains the query, or the extracted text has all of its words
+    private static QueryBuilder textFilter(String query) {
+        return boolQuery()
+                .should(nameFilter(query))
+                .should(matchQuery(CONTENT_FIELD, query).operator(Operator.AND));
+    }
+
+    private static Map<String, Object> metadataSource(File.Metadata metadata) {
+        var source = new HashMap<String, Object>();
+        if (metadata.getType() != null) source.put("type", metadata.getType());
+        if (metadata.getTitle() != null) source.put("title", metadata.getTitle());
+        if (metadata.getAuthor() != null) source.put("author", metadata.getAuthor());
+        if (metadata.getPages() != null) source.put("pages", metadata.getPages());
+        return source;
+    }
+
+    // Consecutive trigrams of the query match only names containing it
+    private static QueryBuilder nameFilter(String name) {
+        if (name.length() >= TRIGRAM) return matchPhraseQuery("name.ngram", name);
+
+        // Query is shorter than one trigram, so fall back to the wildcard over the lowercase keyword
+        var escaped = name.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+        return wildcardQuery("name.keyword", "*" + escaped + "*");
+    }
+
+    private static UpdateRequest update(String index, String id, String script, Collection<String> tags) {
+        return new UpdateRequest(index, id)
+                .script(script(script, tags, UPDATE_NOOP))
+                .retryOnConflict(RETRY_ON_CONFLICT);
+    }
+
+    // High level client of this version cannot submit _update_by_query as a task, so the body is sent as is
+    private static String updateByQuery(QueryBuilder query, String script, Collection<String> tags) {
+        return byQuery(query, script(script, tags, BY_QUERY_NOOP));
+    }
+
+    private static String byQuery(QueryBuilder query, Script script) {
+        try (var body = XContentFactory.jsonBuilder()) {
+            body.startObject().field("query", query);
+            if (script != null) body.field("script", script);
+            return Strings.toString(body.endObject());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Script script(String script, Collection<String> tags, String noop) {
+        return new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, script,
+                Map.of("tags", new ArrayList<>(tags), "noop", noop));
+    }
+}
@@ -1,32 +1,20 @@
 package com.homework.repository;
 
 import com.homework.model.File;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.elasticsearch.annotations.Query;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collection;
-import java.util.List;
-
+// Fragments are looked up by the interfaces declared here, so the custom one is declared besides the store
 @Repository
-public interface FileStorageRepo extends ElasticsearchRepository<File, String> {
-    Page<File> findAllByNameContains(String query, Pageable pageable);
-
-    @Query("{ \"bool\" : { " +
-                "\"must\" : [  " +
-                        "{ \"wildcard\" : { \"name\" : \"*?0*\" }  }, " +
-                        "{ \"match\" : { \"tags\" : { \"query\" : \"?1\", \"operator\": \"and\" } } }" +
-                    "] " +
-                "} " +
-            "}")
-    Page<File> findAllByNameContainsAndTagsIn(String name, Collection<String> tags, Pageable pageable);
+public interface FileStorageRepo extends ElasticsearchRepository<File, String>, FileStorageRepoCustom, FileStore {
+    // Implemented by FileStorageRepoCustomImpl, which takes precedence over the base repository
 
-    @Query("{ \"match\" : { \"tags\" : { \"query\" : \"?0\" , \"operator\": \"and\" } } }")
-    Page<File> findAllByTagsIn(Collection<String> tags, Pageable pageable);
+    @Override
+    <S extends File> S save(S file);
 
-    int countByTagsIn(Collection<String> tags);
+    @Override
+    boolean existsById(String id);
 
-    int countByNameContaining(String name);
+    @Override
+    void deleteById(String id);
 }
@@ -0,0 +1,159 @@
+package com.homework.repository;
+
+import com.homework.model.File;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface FileStorageRepoCustom {
+    /**
+     * Index the file and refresh the index, as the save of the base repository does,
+     * through the async client, so a virtual thread waiting for it is not pinned.
+     */
+    <S extends File> S save(S file);
+
+    boolean existsById(String id);
+
+    /**
+     * Ids among the given ones which have a file, with one _mget request, which sees files not refreshed yet.
+     */
+    Set<String> findExistingIds(Collection<String> ids);
+
+    /**
+     * Delete the file and refresh the index, as the delete of the base repository does.
+     */
+    void deleteById(String id);
+
+    /**
+     * Delete the file with one request, which returns when the deletion is visible to searches.
+     *
+     * @return DELETED, or NOT_FOUND if there is no file with such id
+     */
+    DocWriteResponse.Result deleteFile(String id);
+
+    /**
+     * Delete all files with one _bulk request.
+     *
+     * @return result by id of every file, NOT_FOUND for ids without a file
+     */
+    Map<String, DocWriteResponse.Result> bulkDelete(List<String> ids);
+
+    /**
+     * Delete all files matching the filter with a _delete_by_query task running in Elasticsearch.
+     *
+     * @return id of the task to follow its progress with {@link #findTask(String)}
+     */
+    String submitDelete(FileFilter filter);
+
+    /**
+     * Find a page of files matching the filter with one search request, in the sort of the pageable
+     * or by id if it is unsorted. Total of the page is counted up to file-storage.search.track-total-hits-up-to.
+     */
+    Page<File> findAllByFilter(FileFilter filter, Pageable pageable);
+
+    /**
+     * Find files matching the filter with id greater than afterId, using search_after instead of from.
+     * Cost of the request does not grow with the depth of the page.
+     */
+    Page<File> findAllByFilterAfter(FileFilter filter, String afterId, int size);
+
+    /**
+     * Find files matching the filter which follow the file with the sort values in the sort, using search_after.
+     * Values are those of the sort fields and then of the id, unless the sort ends with it.
+     */
+    Page<File> findAllByFilterAfter(FileFilter filter, Sort sort, Object[] after, int size);
+
+    /**
+     * Lazily stream all files matching the filter, fetching them batch by batch with search_after.
+     * Only one batch is held in memory at a time.
+     */
+    Stream<File> streamAllByFilter(FileFilter filter, int batchSize);
+
+    /**
+     * Count files per tag among the files matching the filter with one terms aggregation.
+     * Returns at most size most frequent tags, most frequent first.
+     */
+    Map<String, Long> countTags(FileFilter filter, int size);
+
+    /**
+     * Count files matching the filter per size range of interval bytes with one histogram aggregation.
+     * Returns the counts by the lowest size of the range in ascending order, ranges without files are left out.
+     */
+    Map<Long, Long> sizeHistogram(FileFilter filter, long interval);
+
+    /**
+     * Index all files with one _bulk request.
+     *
+     * @return failure messages by id of the files which were not indexed
+     */
+    Map<String, String> bulkSave(List<File> files);
+
+    /**
+     * Add tags missing on the file in place with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the file already has all the tags
+     */
+    DocWriteResponse.Result addTags(String id, Collection<String> tags);
+
+    /**
+     * Remove tags from the file in place with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the file has not all the tags
+     */
+    DocWriteResponse.Result removeTags(String id, Collection<String> tags);
+
+    /**
+     * Set the size and the content hash of the file to those of its stored content with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the content is the same
+     */
+    DocWriteResponse.Result updateContent(String id, long size, String contentHash);
+
+    /**
+     * Set the text and metadata extracted from the content with the hash with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the file has another content by now
+     */
+    DocWriteResponse.Result updateExtracted(String id, String contentHash, String content, File.Metadata metadata);
+
+    /**
+     * Add tags missing on every file with one _bulk request of scripted updates.
+     *
+     * @return result by id of every file, NOT_FOUND for ids without a file
+     */
+    Map<String, DocWriteResponse.Result> bulkAddTags(List<String> ids, Collection<String> tags);
+
+    /**
+     * Remove tags from every file which has all of them with one _bulk request of scripted updates.
+     *
+     * @return result by id of every file, NOT_FOUND for ids without a file
+     */
+    Map<String, DocWriteResponse.Result> bulkRemoveTags(List<String> ids, Collection<String> tags);
+
+    /**
+     * Add tags to all files matching the filter with an _update_by_query task running in Elasticsearch.
+     *
+     * @return id of the task to follow its progress with {@link #findTask(String)}
+     */
+    String submitAddTags(FileFilter filter, Collection<String> tags);
+
+    /**
+     * Remove tags from all files matching the filter which have all of them, with an _update_by_query task.
+     *
+     * @return id of the task to follow its progress with {@link #findTask(String)}
+     */
+    String submitRemoveTags(FileFilter filter, Collection<String> tags);
+
+    /**
+     * Progress of an _update_by_query or _delete_by_query task, empty if there is no such task.
+     */
+    Optional<TaskStatus> findTask(String taskId);
+}
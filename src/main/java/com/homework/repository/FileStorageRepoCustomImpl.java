@@ -0,0 +1,357 @@
+package com.homework.repository;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.exceptions.TooManyBucketsException;
+import com.homework.model.File;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class FileStorageRepoCustomImpl implements FileStorageRepoCustom {
+
+    private final RestHighLevelClient client;
+
+    private final ElasticsearchOperations operations;
+
+    private final FileStorageProperties properties;
+
+    // Asks for compressed responses if file-storage.elasticsearch.response-compression is on
+    private final RequestOptions options;
+
+    public FileStorageRepoCustomImpl(RestHighLevelClient client,
+                                     ElasticsearchOperations operations,
+                                     FileStorageProperties properties,
+                                     RequestOptions options) {
+        this.client = client;
+        this.operations = operations;
+        this.properties = properties;
+        this.options = options;
+    }
+
+    @Override
+    public <S extends File> S save(S file) {
+        this.<IndexResponse>await(listener -> client.indexAsync(
+                FileRequests.index(indexName(), operations.getElasticsearchConverter(), file), options, listener));
+        refresh();
+        return file;
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        var request = new GetRequest(indexName(), id)
+                .fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE)
+                .storedFields("_none_");
+        return this.<Boolean>await(listener -> client.existsAsync(request, options, listener));
+    }
+
+    @Override
+    public Set<String> findExistingIds(Collection<String> ids) {
+        if (ids.isEmpty()) return Set.of();
+        var request = FileRequests.multiGet(indexName(), ids);
+        return FileRequests.existingIds(
+                this.<MultiGetResponse>await(listener -> client.mgetAsync(request, options, listener)).getResponses());
+    }
+
+    @Override
+    public void deleteById(String id) {
+        this.<DeleteResponse>await(listener -> client.deleteAsync(new DeleteRequest(indexName(), id), options, listener));
+        refresh();
+    }
+
+    @Override
+    public DocWriteResponse.Result deleteFile(String id) {
+        return this.<DeleteResponse>await(listener -> client.deleteAsync(
+                FileRequests.delete(indexName(), id), options, listener)).getResult();
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkDelete(List<String> ids) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(new DeleteRequest(indexName(), id)));
+        return FileRequests.writeResults(execute(request));
+    }
+
+    @Override
+    public String submitDelete(FileFilter filter) {
+        return submit("_delete_by_query", FileRequests.deleteByQuery(filter));
+    }
+
+    @Override
+    public Page<File> findAllByFilter(FileFilter filter, Pageable pageable) {
+        return search(listing(filter, pageable.getSort(), pageable.getPageSize()).from((int) pageable.getOffset()),
+                pageable);
+    }
+
+    @Override
+    public Page<File> findAllByFilterAfter(FileFilter filter, String afterId, int size) {
+        return search(listing(filter, size).searchAfter(new Object[]{afterId}), PageRequest.of(0, size));
+    }
+
+    @Override
+    public Page<File> findAllByFilterAfter(FileFilter filter, Sort sort, Object[] after, int size) {
+        return search(listing(filter, sort, size).searchAfter(after), PageRequest.of(0, size, sort));
+    }
+
+    @Override
+    public Stream<File> streamAllByFilter(FileFilter filter, int batchSize) {
+        var batches = new Spliterators.AbstractSpliterator<List<File>>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private Object[] after;
+
+            private boolean last;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super List<File>> action) {
+                if (last) return false;
+
+                // Total is not needed, so hits are not counted past the batch
+                var source = listing(filter, batchSize).trackTotalHits(false);
+                if (after != null) source.searchAfter(after);
+
+                var hits = search(source).getHits().getHits();
+                last = hits.length < batchSize;
+                if (hits.length == 0) return false;
+
+                after = hits[hits.length - 1].getSortValues();
+                action.accept(read(hits));
+                return true;
+            }
+        };
+        return StreamSupport.stream(batches, false).flatMap(List::stream);
+    }
+
+    @Override
+    public Map<String, Long> countTags(FileFilter filter, int size) {
+        Terms terms = search(FileRequests.tagCounts(filter, size)).getAggregations().get(FileRequests.TAGS_AGGREGATION);
+        var counts = new LinkedHashMap<String, Long>();
+        terms.getBuckets().forEach(bucket -> counts.put(bucket.getKeyAsString(), bucket.getDocCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<Long, Long> sizeHistogram(FileFilter filter, long interval) {
+        SearchResponse response;
+        try {
+            response = search(FileRequests.sizeHistogram(filter, interval));
+        } catch (ElasticsearchStatusException e) {
+            if (FileRequests.isTooManyBuckets(e)) throw new TooManyBucketsException(FileRequests.TOO_MANY_BUCKETS_MESSAGE);
+            throw e;
+        }
+        Histogram histogram = response.getAggregations().get(FileRequests.SIZES_AGGREGATION);
+        return FileRequests.sizeCounts(histogram);
+    }
+
+    @Override
+    public Map<String, String> bulkSave(List<File> files) {
+        var request = new BulkRequest();
+        for (File file : files) {
+            request.add(indexRequest(operations, file));
+        }
+
+        var failures = new HashMap<String, String>();
+        for (BulkItemResponse item : execute(request)) {
+            if (item.isFailed()) failures.put(item.getId(), item.getFailureMessage());
+        }
+        return failures;
+    }
+
+    @Override
+    public DocWriteResponse.Result addTags(String id, Collection<String> tags) {
+        return update(FileRequests.addTags(indexName(), id, tags));
+    }
+
+    @Override
+    public DocWriteResponse.Result removeTags(String id, Collection<String> tags) {
+        return update(FileRequests.removeTags(indexName(), id, tags));
+    }
+
+    @Override
+    public DocWriteResponse.Result updateContent(String id, long size, String contentHash) {
+        return update(FileRequests.updateContent(indexName(), id, size, contentHash));
+    }
+
+    @Override
+    public DocWriteResponse.Result updateExtracted(String id, String contentHash, String content, File.Metadata metadata) {
+        return update(FileRequests.updateExtracted(indexName(), id, contentHash, content, metadata));
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkAddTags(List<String> ids, Collection<String> tags) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(FileRequests.addTags(indexName(), id, tags)));
+        return FileRequests.writeResults(execute(request));
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkRemoveTags(List<String> ids, Collection<String> tags) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(FileRequests.removeTags(indexName(), id, tags)));
+        return FileRequests.writeResults(execute(request));
+    }
+
+    @Override
+    public String submitAddTags(FileFilter filter, Collection<String> tags) {
+        return submit("_update_by_query", FileRequests.addTagsByQuery(filter, tags));
+    }
+
+    @Override
+    public String submitRemoveTags(FileFilter filter, Collection<String> tags) {
+        return submit("_update_by_query", FileRequests.removeTagsByQuery(filter, tags));
+    }
+
+    @Override
+    public Optional<TaskStatus> findTask(String taskId) {
+        var request = new Request("GET", "/_tasks/" + taskId);
+        return perform(request).flatMap(body -> TaskStatus.fromJson(taskId, body));
+    }
+
+    private SearchSourceBuilder listing(FileFilter filter, int size) {
+        return FileRequests.listing(filter, size, properties.getSearch().getTrackTotalHitsUpTo());
+    }
+
+    private SearchSourceBuilder listing(FileFilter filter, Sort sort, int size) {
+        return FileRequests.listing(filter, sort, size, properties.getSearch().getTrackTotalHitsUpTo());
+    }
+
+    private Page<File> search(SearchSourceBuilder source, Pageable pageable) {
+        var hits = search(source).getHits();
+        return new PageImpl<>(read(hits.getHits()), pageable, hits.getTotalHits().value);
+    }
+
+    private List<File> read(SearchHit[] hits) {
+        return Arrays.stream(hits)
+                .map(hit -> operations.getElasticsearchConverter().read(File.class, DocumentAdapters.from(hit)))
+                .collect(Collectors.toList());
+    }
+
+    private SearchResponse search(SearchSourceBuilder source) {
+        return await(listener -> client.searchAsync(new SearchRequest(indexName()).source(source), options, listener));
+    }
+
+    private DocWriteResponse.Result update(UpdateRequest request) {
+        try {
+            return this.<UpdateResponse>await(listener -> client.updateAsync(request, options, listener)).getResult();
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.NOT_FOUND) return DocWriteResponse.Result.NOT_FOUND;
+            throw e;
+        }
+    }
+
+    private String submit(String endpoint, String body) {
+        var request = new Request("POST", "/" + indexName() + "/" + endpoint);
+        request.addParameters(FileRequests.TASK_PARAMS);
+        request.setJsonEntity(body);
+        var response = perform(request).orElseThrow(() ->
+                new DataAccessResourceFailureException("Index " + indexName() + " does not exist"));
+        return TaskStatus.submittedId(response);
+    }
+
+    private BulkItemResponse[] execute(BulkRequest request) {
+        return this.<BulkResponse>await(listener -> client.bulkAsync(request, options, listener)).getItems();
+    }
+
+    private void refresh() {
+        this.<RefreshResponse>await(listener -> client.indices().refreshAsync(new RefreshRequest(indexName()), options, listener));
+    }
+
+    // Body of a low level request, empty if Elasticsearch answered 404
+    private Optional<String> perform(Request request) {
+        request.setOptions(options);
+        return this.<Optional<String>>await(listener -> client.getLowLevelClient().performRequestAsync(request,
+                new ResponseListener() {
+                    @Override
+                    public void onSuccess(Response response) {
+                        try {
+                            listener.onResponse(Optional.of(EntityUtils.toString(response.getEntity())));
+                        } catch (IOException e) {
+                            listener.onFailure(e);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        if (e instanceof ResponseException
+                                && ((ResponseException) e).getResponse().getStatusLine().getStatusCode() == 404) {
+                            listener.onResponse(Optional.empty());
+                        } else {
+                            listener.onFailure(e);
+                        }
+                    }
+                }));
+    }
+
+    // Blocking calls of the client wait in a synchronized future, which pins a virtual thread to its carrier.
+    // The async call is awaited on a CompletableFuture instead, which parks on both kinds of threads.
+    private <T> T await(Consumer<ActionListener<T>> call) {
+        var future = new CompletableFuture<T>();
+        call.accept(ActionListener.wrap(future::complete, future::completeExceptionally));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new DataAccessResourceFailureException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private String indexName() {
+        return operations.getIndexCoordinatesFor(File.class).getIndexName();
+    }
+
+    static IndexRequest indexRequest(ElasticsearchOperations operations, File file) {
+        return FileRequests.index(operations.getIndexCoordinatesFor(File.class).getIndexName(),
+                operations.getElasticsearchConverter(), file);
+    }
+}
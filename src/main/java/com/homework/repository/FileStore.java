@@ -0,0 +1,10 @@
+package com.homework.repository;
+
+/**
+ * Storage of the file documents used by the services: {@link FileStorageRepo} on Elasticsearch,
+ * or {@link com.homework.repository.lucene.LuceneFileStore} with file-storage.store=lucene.
+ * Operations are documented by {@link FileStorageRepoCustom} in terms of Elasticsearch requests,
+ * other stores return the same results.
+ */
+public interface FileStore extends FileStorageRepoCustom {
+}
@@ -0,0 +1,45 @@
+package com.homework.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every call of the file store, derived and custom methods of the repository alike, per method and exception.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect implements MeterBinder {
+
+    // Calls are not timed until the registry is bound, as in web slice tests without metrics
+    private MeterRegistry registry;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("this(com.homework.repository.FileStore)")
+    public Object time(ProceedingJoinPoint call) throws Throwable {
+        if (registry == null) return call.proceed();
+
+        var sample = Timer.start(registry);
+        var exception = "None";
+        try {
+            return call.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("file.repository")
+                    .description("Time of the file repository calls")
+                    .tag("method", call.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(registry));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.homework.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Progress of an _update_by_query or _delete_by_query task, read from the _tasks API while it runs
+ * and after it completed.
+ */
+@Value
+@Builder
+public class TaskStatus {
+
+    private static final Set<String> BY_QUERY_ACTIONS =
+            Set.of(FileRequests.UPDATE_BY_QUERY_ACTION, FileRequests.DELETE_BY_QUERY_ACTION);
+
+    String id;
+
+    // Action name of the task, as indices:data/write/update/byquery
+    String action;
+
+    boolean completed;
+
+    // Files matched by the query, known after the first batch
+    long total;
+
+    long updated;
+
+    long noops;
+
+    long deleted;
+
+    // Files changed by another request during the task, left as they were
+    long versionConflicts;
+
+    // Reasons of the failed files, or of the whole task
+    List<String> failures;
+
+    /**
+     * Reads the body of GET _tasks/{id}, empty if it is not a task of a by query request.
+     */
+    @SuppressWarnings("unchecked")
+    public static Optional<TaskStatus> fromJson(String id, String json) {
+        var body = XContentHelper.convertToMap(XContentType.JSON.xContent(), json, false);
+        var task = (Map<String, Object>) body.get("task");
+        if (task == null || !BY_QUERY_ACTIONS.contains(task.get("action"))) return Optional.empty();
+
+        var status = (Map<String, Object>) task.getOrDefault("status", Map.of());
+        var failures = new ArrayList<String>();
+        var response = (Map<String, Object>) body.get("response");
+        if (response != null) {
+            for (var failure : (List<Map<String, Object>>) response.getOrDefault("failures", List.of())) {
+                failures.add(failure.get("id") + ": " + reason(failure.get("cause")));
+            }
+        }
+        if (body.containsKey("error")) failures.add(reason(body.get("error")));
+
+        return Optional.of(TaskStatus.builder()
+                .id(id)
+                .action((String) task.get("action"))
+                .completed(Boolean.TRUE.equals(body.get("completed")))
+                .total(count(status, "total"))
+                .updated(count(status, "updated"))
+                .noops(count(status, "noops"))
+                .deleted(count(status, "deleted"))
+                .versionConflicts(count(status, "version_conflicts"))
+                .failures(failures)
+                .build());
+    }
+
+    /**
+     * Reads the task id from the response of a request submitted with wait_for_completion=false.
+     */
+    public static String submittedId(String json) {
+        return String.valueOf(XContentHelper.convertToMap(XContentType.JSON.xContent(), json, false).get("task"));
+    }
+
+    private static long count(Map<String, Object> status, String field) {
+        var value = status.get(field);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String reason(Object cause) {
+        if (cause instanceof Map && ((Map<String, Object>) cause).containsKey("reason")) {
+            return String.valueOf(((Map<String, Object>) cause).get("reason"));
+        }
+        return String.valueOf(cause);
+    }
+}
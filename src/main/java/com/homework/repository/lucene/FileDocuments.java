@@ -0,0 +1,232 @@
+package com.homework.repository.lucene;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Documents of the Lucene file index and the queries over them, with the fields, analyzers and query semantics
+ * of the Elasticsearch index and of {@link com.homework.repository.FileRequests}.
+ */
+final class FileDocuments {
+
+    // Whole file as JSON, the only stored field, as _source in Elasticsearch
+    static final String SOURCE_FIELD = "_source";
+
+    static final Set<String> SOURCE_FIELDS = Set.of(SOURCE_FIELD);
+
+    static final String ID_FIELD = "id";
+
+    static final String SIZE_FIELD = "size";
+
+    static final String TAGS_FIELD = "tags";
+
+    private static final String NAME_NGRAM_FIELD = "name.ngram";
+
+    private static final String NAME_KEYWORD_FIELD = "name.keyword";
+
+    private static final String CONTENT_HASH_FIELD = "contentHash";
+
+    private static final String CONTENT_FIELD = "content";
+
+    // Gram length of the name.ngram analyzer
+    private static final int TRIGRAM = 3;
+
+    // Longer names are not indexed as keyword, as with ignore_above of the mapping
+    private static final int KEYWORD_IGNORE_ABOVE = 256;
+
+    // Index is sorted by id, so listings in the default sort stop after the page
+    static final Sort INDEX_SORT = new Sort(new SortField(ID_FIELD, SortField.Type.STRING));
+
+    // Trigram tokenizer over all characters, lowercased, as the trigram analyzer of files-settings.json
+    private static final Analyzer TRIGRAM_ANALYZER = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            var tokenizer = new NGramTokenizer(TRIGRAM, TRIGRAM);
+            return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+        }
+    };
+
+    // Standard analyzer of Elasticsearch has no stop words
+    private static final Analyzer STANDARD_ANALYZER = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+
+    static final Analyzer ANALYZER =
+            new PerFieldAnalyzerWrapper(STANDARD_ANALYZER, Map.of(NAME_NGRAM_FIELD, TRIGRAM_ANALYZER));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private FileDocuments() {
+    }
+
+    static Document document(File file) {
+        var document = new Document();
+        document.add(new StoredField(SOURCE_FIELD, write(file)));
+        document.add(new StringField(ID_FIELD, file.getId(), Field.Store.NO));
+        document.add(new SortedDocValuesField(ID_FIELD, new BytesRef(file.getId())));
+        if (file.getName() != null) {
+            document.add(new TextField(NAME_NGRAM_FIELD, file.getName(), Field.Store.NO));
+            if (file.getName().length() <= KEYWORD_IGNORE_ABOVE) {
+                document.add(new StringField(NAME_KEYWORD_FIELD, file.getName().toLowerCase(Locale.ROOT), Field.Store.NO));
+            }
+        }
+        document.add(new LongPoint(SIZE_FIELD, file.getSize()));
+        document.add(new NumericDocValuesField(SIZE_FIELD, file.getSize()));
+        if (file.getTags() != null) {
+            for (var tag : file.getTags()) {
+                document.add(new StringField(TAGS_FIELD, tag, Field.Store.NO));
+                document.add(new SortedSetDocValuesField(TAGS_FIELD, new BytesRef(tag)));
+            }
+        }
+        if (file.getContentHash() != null) {
+            document.add(new StringField(CONTENT_HASH_FIELD, file.getContentHash(), Field.Store.NO));
+        }
+        if (file.getContent() != null) document.add(new TextField(CONTENT_FIELD, file.getContent(), Field.Store.NO));
+        return document;
+    }
+
+    static File read(Document document) {
+        try {
+            return MAPPER.readValue(document.getBinaryValue(SOURCE_FIELD).bytes, File.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Term idTerm(String id) {
+        return new Term(ID_FIELD, id);
+    }
+
+    static Query filterQuery(FileFilter filter) {
+        var query = new BooleanQuery.Builder();
+        var clauses = 0;
+        if (filter.getTags() != null) {
+            for (var tag : filter.getTags()) {
+                query.add(new TermQuery(new Term(TAGS_FIELD, tag)), BooleanClause.Occur.FILTER);
+                clauses++;
+            }
+        }
+        if (filter.getQuery() != null) {
+            var text = filter.isNameOnly() ? nameFilter(filter.getQuery()) : textFilter(filter.getQuery());
+            query.add(text, BooleanClause.Occur.FILTER);
+            clauses++;
+        }
+        if (filter.getContentHash() != null) {
+            query.add(new TermQuery(new Term(CONTENT_HASH_FIELD, filter.getContentHash())), BooleanClause.Occur.FILTER);
+            clauses++;
+        }
+        if (filter.getMinSize() != null || filter.getMaxSize() != null) {
+            query.add(LongPoint.newRangeQuery(SIZE_FIELD,
+                    filter.getMinSize() == null ? Long.MIN_VALUE : filter.getMinSize(),
+                    filter.getMaxSize() == null ? Long.MAX_VALUE : filter.getMaxSize()), BooleanClause.Occur.FILTER);
+            clauses++;
+        }
+        // Boolean query without clauses matches nothing
+        return clauses == 0 ? new MatchAllDocsQuery() : query.build();
+    }
+
+    // Files matching the filter which have not all the tags, or have all of them
+    static Query tagsQuery(FileFilter filter, Collection<String> tags, boolean allTags) {
+        var all = new BooleanQuery.Builder();
+        tags.forEach(tag -> all.add(new TermQuery(new Term(TAGS_FIELD, tag)), BooleanClause.Occur.FILTER));
+        return new BooleanQuery.Builder()
+                .add(filterQuery(filter), BooleanClause.Occur.FILTER)
+                .add(tags.isEmpty() ? new MatchAllDocsQuery() : all.build(),
+                        allTags ? BooleanClause.Occur.FILTER : BooleanClause.Occur.MUST_NOT)
+                .build();
+    }
+
+    // Sort of the listing, with the id as the last key, so the sort values of the last file continue it
+    static Sort sort(org.springframework.data.domain.Sort sort) {
+        var fields = new ArrayList<SortField>();
+        for (var order : sort) {
+            fields.add(new SortField(order.getProperty(), sortType(order.getProperty()), order.isDescending()));
+        }
+        if (sort.getOrderFor(ID_FIELD) == null) fields.add(new SortField(ID_FIELD, SortField.Type.STRING));
+        return new Sort(fields.toArray(new SortField[0]));
+    }
+
+    // Sort values as Lucene compares them, from the values of the cursor
+    static FieldDoc after(Sort sort, Object[] values) {
+        var fields = sort.getSort();
+        if (values.length != fields.length) {
+            throw new IllegalArgumentException("Expected " + fields.length + " sort values, got " + values.length);
+        }
+        var after = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            after[i] = fields[i].getType() == SortField.Type.STRING
+                    ? new BytesRef(String.valueOf(values[i]))
+                    : ((Number) values[i]).longValue();
+        }
+        // Files with equal sort values follow the one with the highest doc, so none of them is skipped
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN, after);
+    }
+
+    private static SortField.Type sortType(String field) {
+        if (ID_FIELD.equals(field)) return SortField.Type.STRING;
+        if (SIZE_FIELD.equals(field)) return SortField.Type.LONG;
+        throw new IllegalArgumentException("Files cannot be sorted by " + field);
+    }
+
+    private static byte[] write(File file) {
+        try {
+            return MAPPER.writeValueAsBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Name contains the query, or the extracted text has all of its words
+    private static Query textFilter(String text) {
+        var query = new BooleanQuery.Builder().add(nameFilter(text), BooleanClause.Occur.SHOULD);
+        // Query without words, as punctuation only, matches names only
+        var content = new QueryBuilder(STANDARD_ANALYZER).createBooleanQuery(CONTENT_FIELD, text, BooleanClause.Occur.MUST);
+        if (content != null) query.add(content, BooleanClause.Occur.SHOULD);
+        return query.build();
+    }
+
+    // Consecutive trigrams of the query match only names containing it
+    private static Query nameFilter(String name) {
+        if (name.length() >= TRIGRAM) return new QueryBuilder(TRIGRAM_ANALYZER).createPhraseQuery(NAME_NGRAM_FIELD, name);
+
+        // Query is shorter than one trigram, so fall back to the wildcard over the lowercase keyword
+        var escaped = name.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+        return new WildcardQuery(new Term(NAME_KEYWORD_FIELD, "*" + escaped + "*"));
+    }
+}
@@ -0,0 +1,683 @@
+package com.homework.repository.lucene;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.homework.config.FileStorageProperties;
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileRequests;
+import com.homework.repository.FileStore;
+import com.homework.repository.TaskStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * File documents in a Lucene index embedded in the application, for a single node without an Elasticsearch cluster.
+ * Index files are memory-mapped, searches use a near-real-time reader which is reopened after every write,
+ * so a write is visible when it returns, and changes are committed to disk every commit-interval.
+ *
+ * Updates read the file and write it whole, under a lock of its id, so concurrent updates of a file are applied
+ * one after another. Updates by filter run one at a time on a task thread, in batches, as the by query
+ * tasks of Elasticsearch do.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "file-storage.store", havingValue = "lucene")
+public class LuceneFileStore implements FileStore {
+
+    private static final String TASK_NODE = "lucene";
+
+    // Files locked and made visible at once by an update by filter
+    private static final int TASK_BATCH_SIZE = 1000;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileStorageProperties properties;
+
+    private final MMapDirectory directory;
+
+    private final IndexWriter writer;
+
+    private final SearcherManager searchers;
+
+    // Ids share a lock by hash, which keeps the count of locks fixed
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final ScheduledExecutorService committer;
+
+    private final ExecutorService tasks;
+
+    private final AtomicLong taskNumbers = new AtomicLong();
+
+    private final Cache<String, TaskStatus> taskStatuses;
+
+    public LuceneFileStore(FileStorageProperties properties) throws IOException {
+        this.properties = properties;
+        var lucene = properties.getLucene();
+        Files.createDirectories(lucene.getDirectory());
+        this.directory = new MMapDirectory(lucene.getDirectory());
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(FileDocuments.ANALYZER)
+                .setIndexSort(FileDocuments.INDEX_SORT)
+                .setRAMBufferSizeMB((double) lucene.getRamBuffer().toBytes() / (1024 * 1024))
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searchers = new SearcherManager(writer, null);
+        for (int i = 0; i < LOCK_STRIPES; i++) locks[i] = new ReentrantLock();
+        this.taskStatuses = Caffeine.newBuilder().maximumSize(lucene.getCompletedTasks()).build();
+
+        this.committer = Executors.newSingleThreadScheduledExecutor(daemon("lucene-commit"));
+        var interval = lucene.getCommitInterval().toMillis();
+        committer.scheduleWithFixedDelay(this::commit, interval, interval, TimeUnit.MILLISECONDS);
+        this.tasks = Executors.newSingleThreadExecutor(daemon("lucene-task"));
+    }
+
+    @Override
+    public <S extends File> S save(S file) {
+        write(List.of(file.getId()), () -> writer.updateDocument(FileDocuments.idTerm(file.getId()),
+                FileDocuments.document(file)));
+        return file;
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return search(searcher -> searcher.count(new TermQuery(FileDocuments.idTerm(id))) > 0);
+    }
+
+    @Override
+    public Set<String> findExistingIds(Collection<String> ids) {
+        return search(searcher -> {
+            var existing = new HashSet<String>();
+            for (var id : ids) {
+                if (searcher.count(new TermQuery(FileDocuments.idTerm(id))) > 0) existing.add(id);
+            }
+            return existing;
+        });
+    }
+
+    @Override
+    public void deleteById(String id) {
+        deleteFile(id);
+    }
+
+    @Override
+    public DocWriteResponse.Result deleteFile(String id) {
+        return bulkDelete(List.of(id)).get(id);
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkDelete(List<String> ids) {
+        return write(ids, () -> {
+            var results = new LinkedHashMap<String, DocWriteResponse.Result>();
+            var deleted = new HashMap<String, File>();
+            for (var id : ids) {
+                if (current(id, deleted) == null) {
+                    results.put(id, DocWriteResponse.Result.NOT_FOUND);
+                    continue;
+                }
+                writer.deleteDocuments(FileDocuments.idTerm(id));
+                deleted.put(id, null);
+                results.put(id, DocWriteResponse.Result.DELETED);
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public String submitDelete(FileFilter filter) {
+        return submit(FileRequests.DELETE_BY_QUERY_ACTION, FileDocuments.filterQuery(filter), null);
+    }
+
+    @Override
+    public Page<File> findAllByFilter(FileFilter filter, Pageable pageable) {
+        // Services reject pages past max-result-window, larger ones would not fit the collector
+        var from = Math.toIntExact(pageable.getOffset());
+        return find(filter, FileDocuments.sort(pageable.getSort()), null, from, pageable.getPageSize(), pageable);
+    }
+
+    @Override
+    public Page<File> findAllByFilterAfter(FileFilter filter, String afterId, int size) {
+        var sort = FileDocuments.sort(org.springframework.data.domain.Sort.unsorted());
+        return find(filter, sort, FileDocuments.after(sort, new Object[]{afterId}), 0, size, PageRequest.of(0, size));
+    }
+
+    @Override
+    public Page<File> findAllByFilterAfter(FileFilter filter, org.springframework.data.domain.Sort sort,
+                                           Object[] after, int size) {
+        var fields = FileDocuments.sort(sort);
+        return find(filter, fields, FileDocuments.after(fields, after), 0, size, PageRequest.of(0, size, sort));
+    }
+
+    @Override
+    public Stream<File> streamAllByFilter(FileFilter filter, int batchSize) {
+        var sort = FileDocuments.sort(org.springframework.data.domain.Sort.unsorted());
+        var query = FileDocuments.filterQuery(filter);
+        var batches = new Spliterators.AbstractSpliterator<List<File>>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private FieldDoc after;
+
+            private boolean last;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super List<File>> action) {
+                if (last) return false;
+
+                // Every batch is read from the latest reader, continuing after the sort values of the last file
+                var batch = search(searcher -> {
+                    // Total is not needed, so hits are not counted past the batch
+                    var collector = TopFieldCollector.create(sort, batchSize, after, 1);
+                    searcher.search(query, collector);
+                    var hits = collector.topDocs().scoreDocs;
+                    var files = new ArrayList<File>(hits.length);
+                    for (var hit : hits) files.add(listed(searcher, hit.doc));
+                    if (hits.length > 0) {
+                        var values = ((FieldDoc) hits[hits.length - 1]).fields;
+                        after = new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[]{BytesRef.deepCopyOf((BytesRef) values[0])});
+                    }
+                    return files;
+                });
+                last = batch.size() < batchSize;
+                if (batch.isEmpty()) return false;
+                action.accept(batch);
+                return true;
+            }
+        };
+        return StreamSupport.stream(batches, false).flatMap(List::stream);
+    }
+
+    @Override
+    public Map<String, Long> countTags(FileFilter filter, int size) {
+        var collector = new TagCountCollector();
+        search(searcher -> {
+            searcher.search(FileDocuments.filterQuery(filter), collector);
+            return null;
+        });
+        // Most frequent first and then by tag, as the buckets of a terms aggregation
+        return collector.counts().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(size)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    @Override
+    public Map<Long, Long> sizeHistogram(FileFilter filter, long interval) {
+        var collector = new SizeHistogramCollector(interval);
+        search(searcher -> {
+            searcher.search(FileDocuments.filterQuery(filter), collector);
+            return null;
+        });
+        return new LinkedHashMap<>(collector.counts);
+    }
+
+    @Override
+    public Map<String, String> bulkSave(List<File> files) {
+        var ids = files.stream().map(File::getId).collect(Collectors.toList());
+        return write(ids, () -> {
+            var failures = new HashMap<String, String>();
+            for (var file : files) {
+                try {
+                    writer.updateDocument(FileDocuments.idTerm(file.getId()), FileDocuments.document(file));
+                } catch (IllegalArgumentException e) {
+                    // Rejected document, as with an immense term, fails alone as a bulk item does
+                    failures.put(file.getId(), e.getMessage());
+                }
+            }
+            return failures;
+        });
+    }
+
+    @Override
+    public DocWriteResponse.Result addTags(String id, Collection<String> tags) {
+        return bulkAddTags(List.of(id), tags).get(id);
+    }
+
+    @Override
+    public DocWriteResponse.Result removeTags(String id, Collection<String> tags) {
+        return bulkRemoveTags(List.of(id), tags).get(id);
+    }
+
+    // Size and hash are set and the text of the previous content is cleared, as the partial update does
+    @Override
+    public DocWriteResponse.Result updateContent(String id, long size, String contentHash) {
+        return update(List.of(id), file -> {
+            if (file.getSize() == size && Objects.equals(file.getContentHash(), contentHash)
+                    && file.getContent() == null && file.getMetadata() == null) {
+                return null;
+            }
+            file.setSize(size);
+            file.setContentHash(contentHash);
+            file.setContent(null);
+            file.setMetadata(null);
+            return file;
+        }).get(id);
+    }
+
+    // Text of a replaced content is not written over the text of the new one
+    @Override
+    public DocWriteResponse.Result updateExtracted(String id, String contentHash, String content, File.Metadata metadata) {
+        return update(List.of(id), file -> {
+            if (!Objects.equals(file.getContentHash(), contentHash)) return null;
+            file.setContent(content);
+            file.setMetadata(metadata);
+            return file;
+        }).get(id);
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkAddTags(List<String> ids, Collection<String> tags) {
+        return update(ids, file -> addTags(file, tags));
+    }
+
+    @Override
+    public Map<String, DocWriteResponse.Result> bulkRemoveTags(List<String> ids, Collection<String> tags) {
+        return update(ids, file -> removeTags(file, tags));
+    }
+
+    // Files which already have all the tags are not matched, so they are not rewritten
+    @Override
+    public String submitAddTags(FileFilter filter, Collection<String> tags) {
+        return submit(FileRequests.UPDATE_BY_QUERY_ACTION, FileDocuments.tagsQuery(filter, tags, false),
+                file -> addTags(file, tags));
+    }
+
+    // Only files with all the tags are matched, as they are removed only from such files
+    @Override
+    public String submitRemoveTags(FileFilter filter, Collection<String> tags) {
+        return submit(FileRequests.UPDATE_BY_QUERY_ACTION, FileDocuments.tagsQuery(filter, tags, true),
+                file -> removeTags(file, tags));
+    }
+
+    @Override
+    public Optional<TaskStatus> findTask(String taskId) {
+        return Optional.ofNullable(taskStatuses.getIfPresent(taskId));
+    }
+
+    /**
+     * Commits the changes written since the last commit, which makes them survive a crash.
+     */
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) writer.commit();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Lucene index was not committed", e);
+        }
+    }
+
+    // Tasks are stopped between batches, then the last changes are committed by close
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        committer.shutdownNow();
+        tasks.shutdownNow();
+        if (!tasks.awaitTermination(1, TimeUnit.MINUTES)) log.warn("Lucene task did not stop before shutdown");
+        searchers.close();
+        writer.close();
+        directory.close();
+    }
+
+    private static File addTags(File file, Collection<String> tags) {
+        var current = file.getTags() == null ? new ArrayList<String>() : new ArrayList<>(file.getTags());
+        var changed = false;
+        for (var tag : tags) {
+            if (!current.contains(tag)) {
+                current.add(tag);
+                changed = true;
+            }
+        }
+        if (!changed) return null;
+        file.setTags(current);
+        return file;
+    }
+
+    private static File removeTags(File file, Collection<String> tags) {
+        var current = file.getTags() == null ? new ArrayList<String>() : new ArrayList<>(file.getTags());
+        if (!current.containsAll(tags)) return null;
+        current.removeAll(tags);
+        file.setTags(current);
+        return file;
+    }
+
+    private Page<File> find(FileFilter filter, Sort sort, FieldDoc after, int from, int size, Pageable pageable) {
+        var trackTotalHitsUpTo = properties.getSearch().getTrackTotalHitsUpTo();
+        return search(searcher -> {
+            var collector = TopFieldCollector.create(sort, Math.max(Math.addExact(from, size), 1), after, trackTotalHitsUpTo);
+            searcher.search(FileDocuments.filterQuery(filter), collector);
+            var docs = collector.topDocs(from, size);
+            var files = new ArrayList<File>(docs.scoreDocs.length);
+            for (var hit : docs.scoreDocs) files.add(listed(searcher, hit.doc));
+            // Counting stopped at the threshold reports the threshold, as Elasticsearch does
+            var total = docs.totalHits.relation == TotalHits.Relation.EQUAL_TO
+                    ? docs.totalHits.value
+                    : Math.min(docs.totalHits.value, trackTotalHitsUpTo);
+            return new PageImpl<>(files, pageable, total);
+        });
+    }
+
+    // Extracted text is left out of listings
+    private static File listed(IndexSearcher searcher, int doc) throws IOException {
+        var file = FileDocuments.read(searcher.doc(doc, FileDocuments.SOURCE_FIELDS));
+        file.setContent(null);
+        return file;
+    }
+
+    // Latest version of the file, written earlier in the same write if it is in the map
+    private File current(String id, Map<String, File> written) {
+        if (written.containsKey(id)) return written.get(id);
+        return search(searcher -> {
+            var hits = searcher.search(new TermQuery(FileDocuments.idTerm(id)), 1).scoreDocs;
+            return hits.length == 0 ? null : FileDocuments.read(searcher.doc(hits[0].doc, FileDocuments.SOURCE_FIELDS));
+        });
+    }
+
+    // Change returns the changed file, or null if it leaves the file as it is
+    private Map<String, DocWriteResponse.Result> update(List<String> ids, UnaryOperator<File> change) {
+        return write(ids, () -> {
+            var results = new LinkedHashMap<String, DocWriteResponse.Result>();
+            var written = new HashMap<String, File>();
+            for (var id : ids) {
+                results.put(id, update(id, change, written));
+            }
+            return results;
+        });
+    }
+
+    private DocWriteResponse.Result update(String id, UnaryOperator<File> change, Map<String, File> written)
+            throws IOException {
+        var file = current(id, written);
+        if (file == null) return DocWriteResponse.Result.NOT_FOUND;
+        var changed = change.apply(file);
+        if (changed == null) return DocWriteResponse.Result.NOOP;
+        writer.updateDocument(FileDocuments.idTerm(id), FileDocuments.document(changed));
+        written.put(id, changed);
+        return DocWriteResponse.Result.UPDATED;
+    }
+
+    // Locks of the ids are taken in a fixed order, so writes of overlapping ids do not deadlock.
+    // Reader is reopened before the locks are released, so the next writer of the ids reads these changes
+    private <T> T write(Collection<String> ids, Write<T> write) {
+        var stripes = new TreeSet<Integer>();
+        ids.forEach(id -> stripes.add(Math.floorMod(id.hashCode(), LOCK_STRIPES)));
+        stripes.forEach(stripe -> locks[stripe].lock());
+        try {
+            var result = write.apply();
+            searchers.maybeRefreshBlocking();
+            return result;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Lucene index was not written: " + e.getMessage(), e);
+        } finally {
+            stripes.descendingSet().forEach(stripe -> locks[stripe].unlock());
+        }
+    }
+
+    private void write(Collection<String> ids, WriteAction write) {
+        write(ids, () -> {
+            write.apply();
+            return null;
+        });
+    }
+
+    private <T> T search(Search<T> search) {
+        try {
+            var searcher = searchers.acquire();
+            try {
+                return search.apply(searcher);
+            } finally {
+                searchers.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Lucene index was not read: " + e.getMessage(), e);
+        }
+    }
+
+    // Deletes the matched files if change is null
+    private String submit(String action, Query query, UnaryOperator<File> change) {
+        var id = TASK_NODE + ":" + taskNumbers.incrementAndGet();
+        var task = new Task(id, action);
+        taskStatuses.put(id, task.status(false));
+        tasks.execute(() -> run(task, query, change));
+        return id;
+    }
+
+    // Files are counted once and then matched and changed batch by batch in id order, continuing after the last id,
+    // so only one batch of ids is held; those deleted meanwhile are counted as conflicts
+    private void run(Task task, Query query, UnaryOperator<File> change) {
+        try {
+            task.total = search(searcher -> (long) searcher.count(query));
+            taskStatuses.put(task.id, task.status(false));
+
+            FieldDoc after = null;
+            long matched = 0;
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    task.failures.add("Task was stopped by shutdown");
+                    break;
+                }
+                var last = after;
+                var batch = search(searcher -> {
+                    var collector = TopFieldCollector.create(FileDocuments.INDEX_SORT, TASK_BATCH_SIZE, last, 1);
+                    searcher.search(query, collector);
+                    var ids = new ArrayList<String>();
+                    for (var hit : collector.topDocs().scoreDocs) {
+                        ids.add(((BytesRef) ((FieldDoc) hit).fields[0]).utf8ToString());
+                    }
+                    return ids;
+                });
+                if (batch.isEmpty()) break;
+                after = new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[]{new BytesRef(batch.get(batch.size() - 1))});
+
+                if (change == null) {
+                    bulkDelete(batch).values().forEach(task::count);
+                } else {
+                    update(batch, change).values().forEach(task::count);
+                }
+                // Files added past the last id while the task runs are changed too
+                matched += batch.size();
+                task.total = Math.max(task.total, matched);
+                taskStatuses.put(task.id, task.status(false));
+                if (batch.size() < TASK_BATCH_SIZE) break;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Lucene task {} failed", task.id, e);
+            task.failures.add(String.valueOf(e.getMessage()));
+        }
+        taskStatuses.put(task.id, task.status(true));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private interface Write<T> {
+        T apply() throws IOException;
+    }
+
+    private interface WriteAction {
+        void apply() throws IOException;
+    }
+
+    private interface Search<T> {
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    // Progress of an update by filter, written only by the task thread
+    private static class Task {
+
+        private final String id;
+
+        private final String action;
+
+        private long total;
+
+        private long updated;
+
+        private long noops;
+
+        private long deleted;
+
+        private long versionConflicts;
+
+        private final List<String> failures = new ArrayList<>();
+
+        Task(String id, String action) {
+            this.id = id;
+            this.action = action;
+        }
+
+        void count(DocWriteResponse.Result result) {
+            if (result == DocWriteResponse.Result.UPDATED) updated++;
+            else if (result == DocWriteResponse.Result.NOOP) noops++;
+            else if (result == DocWriteResponse.Result.DELETED) deleted++;
+            else versionConflicts++;
+        }
+
+        TaskStatus status(boolean completed) {
+            return TaskStatus.builder()
+                    .id(id)
+                    .action(action)
+                    .completed(completed)
+                    .total(total)
+                    .updated(updated)
+                    .noops(noops)
+                    .deleted(deleted)
+                    .versionConflicts(versionConflicts)
+                    .failures(List.copyOf(failures))
+                    .build();
+        }
+    }
+
+    // Files per tag, counted by ordinal within a segment and by tag across segments
+    private static class TagCountCollector extends SimpleCollector {
+
+        private final Map<String, Long> counts = new HashMap<>();
+
+        private SortedSetDocValues tags;
+
+        private long[] ordinalCounts;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            flush();
+            tags = DocValues.getSortedSet(context.reader(), FileDocuments.TAGS_FIELD);
+            ordinalCounts = new long[(int) tags.getValueCount()];
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (!tags.advanceExact(doc)) return;
+            for (long ordinal = tags.nextOrd(); ordinal != SortedSetDocValues.NO_MORE_ORDS; ordinal = tags.nextOrd()) {
+                ordinalCounts[(int) ordinal]++;
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        Map<String, Long> counts() {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Lucene index was not read: " + e.getMessage(), e);
+            }
+            return counts;
+        }
+
+        private void flush() throws IOException {
+            if (ordinalCounts == null) return;
+            for (int ordinal = 0; ordinal < ordinalCounts.length; ordinal++) {
+                if (ordinalCounts[ordinal] > 0) {
+                    counts.merge(tags.lookupOrd(ordinal).utf8ToString(), ordinalCounts[ordinal], Long::sum);
+                }
+            }
+            ordinalCounts = null;
+        }
+    }
+
+    // Files per range of interval bytes, keyed by the lowest size of the range
+    private static class SizeHistogramCollector extends SimpleCollector {
+
+        private final long interval;
+
+        private final TreeMap<Long, Long> counts = new TreeMap<>();
+
+        private NumericDocValues sizes;
+
+        SizeHistogramCollector(long interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            sizes = DocValues.getNumeric(context.reader(), FileDocuments.SIZE_FIELD);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (!sizes.advanceExact(doc)) return;
+            counts.merge(Math.floorDiv(sizes.longValue(), interval) * interval, 1L, Long::sum);
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+}
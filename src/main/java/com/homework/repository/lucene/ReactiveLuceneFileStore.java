@@ -0,0 +1,149 @@
+package com.homework.repository.lucene;
+
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import com.homework.repository.TaskStatus;
+import com.homework.repository.reactive.ReactiveFileStore;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Reactive mode of the {@link LuceneFileStore}. Searches and writes of Lucene block on the index files and locks,
+ * so they run on the bounded elastic scheduler and never on the event loop.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(name = "file-storage.store", havingValue = "lucene")
+public class ReactiveLuceneFileStore implements ReactiveFileStore {
+
+    private final LuceneFileStore store;
+
+    public ReactiveLuceneFileStore(LuceneFileStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public <S extends File> Mono<S> save(S file) {
+        return call(() -> store.save(file));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return call(() -> store.existsById(id));
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilter(FileFilter filter, Pageable pageable) {
+        return call(() -> store.findAllByFilter(filter, pageable));
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilterAfter(FileFilter filter, String afterId, int size) {
+        return call(() -> store.findAllByFilterAfter(filter, afterId, size));
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilterAfter(FileFilter filter, Sort sort, Object[] after, int size) {
+        return call(() -> store.findAllByFilterAfter(filter, sort, after, size));
+    }
+
+    // Next batch is searched when the previous one is consumed
+    @Override
+    public Flux<File> streamAllByFilter(FileFilter filter, int batchSize) {
+        return Flux.fromStream(() -> store.streamAllByFilter(filter, batchSize)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Map<String, Long>> countTags(FileFilter filter, int size) {
+        return call(() -> store.countTags(filter, size));
+    }
+
+    @Override
+    public Mono<Map<Long, Long>> sizeHistogram(FileFilter filter, long interval) {
+        return call(() -> store.sizeHistogram(filter, interval));
+    }
+
+    @Override
+    public Mono<Map<String, String>> bulkSave(List<File> files) {
+        return call(() -> store.bulkSave(files));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> addTags(String id, Collection<String> tags) {
+        return call(() -> store.addTags(id, tags));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> removeTags(String id, Collection<String> tags) {
+        return call(() -> store.removeTags(id, tags));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> updateContent(String id, long size, String contentHash) {
+        return call(() -> store.updateContent(id, size, contentHash));
+    }
+
+    @Override
+    public Mono<Set<String>> findExistingIds(Collection<String> ids) {
+        return call(() -> store.findExistingIds(ids));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> deleteFile(String id) {
+        return call(() -> store.deleteFile(id));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkDelete(List<String> ids) {
+        return call(() -> store.bulkDelete(ids));
+    }
+
+    @Override
+    public Mono<String> submitDelete(FileFilter filter) {
+        return call(() -> store.submitDelete(filter));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkAddTags(List<String> ids, Collection<String> tags) {
+        return call(() -> store.bulkAddTags(ids, tags));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkRemoveTags(List<String> ids, Collection<String> tags) {
+        return call(() -> store.bulkRemoveTags(ids, tags));
+    }
+
+    @Override
+    public Mono<String> submitAddTags(FileFilter filter, Collection<String> tags) {
+        return call(() -> store.submitAddTags(filter, tags));
+    }
+
+    @Override
+    public Mono<String> submitRemoveTags(FileFilter filter, Collection<String> tags) {
+        return call(() -> store.submitRemoveTags(filter, tags));
+    }
+
+    @Override
+    public Mono<TaskStatus> findTask(String taskId) {
+        return call(() -> store.findTask(taskId).orElse(null));
+    }
+
+    // Null result completes empty
+    private static <T> Mono<T> call(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+}
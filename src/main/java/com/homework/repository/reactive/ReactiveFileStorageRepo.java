@@ -0,0 +1,11 @@
+package com.homework.repository.reactive;
+
+import com.homework.model.File;
+import org.springframework.data.elasticsearch.repository.ReactiveElasticsearchRepository;
+import org.springframework.stereotype.Repository;
+
+// Fragments are looked up by the interfaces declared here, so the custom one is declared besides the store
+@Repository
+public interface ReactiveFileStorageRepo extends ReactiveElasticsearchRepository<File, String>,
+        ReactiveFileStorageRepoCustom, ReactiveFileStore {
+}
@@ -0,0 +1,109 @@
+package com.homework.repository.reactive;
+
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import com.homework.repository.TaskStatus;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-blocking variant of {@link com.homework.repository.FileStorageRepoCustom}, sending the same requests.
+ */
+public interface ReactiveFileStorageRepoCustom {
+    /**
+     * Find a page of files matching the filter with one search request.
+     * Total of the page is counted up to file-storage.search.track-total-hits-up-to.
+     */
+    Mono<Page<File>> findAllByFilter(FileFilter filter, Pageable pageable);
+
+    /**
+     * Find files matching the filter with id greater than afterId, using search_after instead of from.
+     */
+    Mono<Page<File>> findAllByFilterAfter(FileFilter filter, String afterId, int size);
+
+    /**
+     * Find files matching the filter which follow the file with the sort values in the sort, using search_after.
+     */
+    Mono<Page<File>> findAllByFilterAfter(FileFilter filter, Sort sort, Object[] after, int size);
+
+    /**
+     * Stream all files matching the filter, fetching the next batch with search_after on demand.
+     */
+    Flux<File> streamAllByFilter(FileFilter filter, int batchSize);
+
+    /**
+     * Count files per tag among the files matching the filter with one terms aggregation.
+     * Returns at most size most frequent tags, most frequent first.
+     */
+    Mono<Map<String, Long>> countTags(FileFilter filter, int size);
+
+    /**
+     * Count files matching the filter per size range of interval bytes with one histogram aggregation.
+     */
+    Mono<Map<Long, Long>> sizeHistogram(FileFilter filter, long interval);
+
+    /**
+     * Index all files with one _bulk request.
+     *
+     * @return failure messages by id of the files which were not indexed
+     */
+    Mono<Map<String, String>> bulkSave(List<File> files);
+
+    /**
+     * Add tags missing on the file in place with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the file already has all the tags
+     */
+    Mono<DocWriteResponse.Result> addTags(String id, Collection<String> tags);
+
+    /**
+     * Remove tags from the file in place with one _update request.
+     *
+     * @return NOT_FOUND if there is no file with such id, NOOP if the file has not all the tags
+     */
+    Mono<DocWriteResponse.Result> removeTags(String id, Collection<String> tags);
+
+    Mono<DocWriteResponse.Result> updateContent(String id, long size, String contentHash);
+
+    /**
+     * Ids among the given ones which have a file, with one _mget request, which sees files not refreshed yet.
+     */
+    Mono<Set<String>> findExistingIds(Collection<String> ids);
+
+    /**
+     * Delete the file with one request, which completes when the deletion is visible to searches.
+     */
+    Mono<DocWriteResponse.Result> deleteFile(String id);
+
+    Mono<Map<String, DocWriteResponse.Result>> bulkDelete(List<String> ids);
+
+    /**
+     * Delete all files matching the filter with a _delete_by_query task, emits the id of the task.
+     */
+    Mono<String> submitDelete(FileFilter filter);
+
+    Mono<Map<String, DocWriteResponse.Result>> bulkAddTags(List<String> ids, Collection<String> tags);
+
+    Mono<Map<String, DocWriteResponse.Result>> bulkRemoveTags(List<String> ids, Collection<String> tags);
+
+    /**
+     * Add tags to all files matching the filter with an _update_by_query task, emits the id of the task.
+     */
+    Mono<String> submitAddTags(FileFilter filter, Collection<String> tags);
+
+    Mono<String> submitRemoveTags(FileFilter filter, Collection<String> tags);
+
+    /**
+     * Progress of an _update_by_query or _delete_by_query task, empty if there is no such task.
+     */
+    Mono<TaskStatus> findTask(String taskId);
+}
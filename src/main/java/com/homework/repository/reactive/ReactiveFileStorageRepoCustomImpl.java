@@ -0,0 +1,296 @@
+package com.homework.repository.reactive;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.exceptions.TooManyBucketsException;
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileRequests;
+import com.homework.repository.TaskStatus;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.reactive.ReactiveElasticsearchClient;
+import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class ReactiveFileStorageRepoCustomImpl implements ReactiveFileStorageRepoCustom {
+
+    private final ReactiveElasticsearchClient client;
+
+    private final ReactiveElasticsearchOperations operations;
+
+    private final FileStorageProperties properties;
+
+    public ReactiveFileStorageRepoCustomImpl(ReactiveElasticsearchClient client,
+                                             ReactiveElasticsearchOperations operations,
+                                             FileStorageProperties properties) {
+        this.client = client;
+        this.operations = operations;
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilter(FileFilter filter, Pageable pageable) {
+        return search(listing(filter, pageable.getSort(), pageable.getPageSize()).from((int) pageable.getOffset()),
+                pageable);
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilterAfter(FileFilter filter, String afterId, int size) {
+        return search(listing(filter, size).searchAfter(new Object[]{afterId}), PageRequest.of(0, size));
+    }
+
+    @Override
+    public Mono<Page<File>> findAllByFilterAfter(FileFilter filter, Sort sort, Object[] after, int size) {
+        return search(listing(filter, sort, size).searchAfter(after), PageRequest.of(0, size, sort));
+    }
+
+    @Override
+    public Flux<File> streamAllByFilter(FileFilter filter, int batchSize) {
+        // Next batch is requested only after the last one is emitted and continues after its last hit
+        return batch(filter, batchSize, null)
+                .expand(hits -> hits.size() < batchSize
+                        ? Mono.empty()
+                        : batch(filter, batchSize, hits.get(hits.size() - 1).getSortValues()))
+                .concatMapIterable(hits -> read(hits.toArray(SearchHit[]::new)));
+    }
+
+    @Override
+    public Mono<Map<String, Long>> countTags(FileFilter filter, int size) {
+        return client.aggregate(new SearchRequest(indexName()).source(FileRequests.tagCounts(filter, size)))
+                .ofType(Terms.class)
+                .next()
+                .map(terms -> {
+                    var counts = new LinkedHashMap<String, Long>();
+                    terms.getBuckets().forEach(bucket -> counts.put(bucket.getKeyAsString(), bucket.getDocCount()));
+                    return counts;
+                });
+    }
+
+    @Override
+    public Mono<Map<Long, Long>> sizeHistogram(FileFilter filter, long interval) {
+        return client.aggregate(new SearchRequest(indexName()).source(FileRequests.sizeHistogram(filter, interval)))
+                .ofType(Histogram.class)
+                .next()
+                .map(FileRequests::sizeCounts)
+                .onErrorMap(FileRequests::isTooManyBuckets,
+                        e -> new TooManyBucketsException(FileRequests.TOO_MANY_BUCKETS_MESSAGE));
+    }
+
+    @Override
+    public Mono<Map<String, String>> bulkSave(List<File> files) {
+        var request = new BulkRequest();
+        for (File file : files) {
+            request.add(FileRequests.index(indexName(), operations.getElasticsearchConverter(), file));
+        }
+
+        return client.bulk(request).map(response -> {
+            var failures = new HashMap<String, String>();
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) failures.put(item.getId(), item.getFailureMessage());
+            }
+            return failures;
+        });
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> addTags(String id, Collection<String> tags) {
+        return update(FileRequests.addTags(indexName(), id, tags));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> removeTags(String id, Collection<String> tags) {
+        return update(FileRequests.removeTags(indexName(), id, tags));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> updateContent(String id, long size, String contentHash) {
+        return update(FileRequests.updateContent(indexName(), id, size, contentHash));
+    }
+
+    // Client leaves out the failed items of a multi get, so the raw response is read to keep them
+    @Override
+    public Mono<Set<String>> findExistingIds(Collection<String> ids) {
+        if (ids.isEmpty()) return Mono.just(Set.of());
+        var body = Strings.toString(FileRequests.multiGet(indexName(), ids));
+        return exchange(webClient -> webClient.post()
+                        .uri(uri -> uri.pathSegment("_mget").build())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body))
+                .flatMap(response -> Mono.fromCallable(() -> FileRequests.existingIds(parseMultiGet(response).getResponses())));
+    }
+
+    @Override
+    public Mono<DocWriteResponse.Result> deleteFile(String id) {
+        return client.delete(FileRequests.delete(indexName(), id))
+                .map(DeleteResponse::getResult)
+                .onErrorResume(ElasticsearchStatusException.class, e -> e.status() == RestStatus.NOT_FOUND
+                        ? Mono.just(DocWriteResponse.Result.NOT_FOUND)
+                        : Mono.error(e));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkDelete(List<String> ids) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(new DeleteRequest(indexName(), id)));
+        return client.bulk(request).map(response -> FileRequests.writeResults(response.getItems()));
+    }
+
+    @Override
+    public Mono<String> submitDelete(FileFilter filter) {
+        return submit("_delete_by_query", FileRequests.deleteByQuery(filter));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkAddTags(List<String> ids, Collection<String> tags) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(FileRequests.addTags(indexName(), id, tags)));
+        return client.bulk(request).map(response -> FileRequests.writeResults(response.getItems()));
+    }
+
+    @Override
+    public Mono<Map<String, DocWriteResponse.Result>> bulkRemoveTags(List<String> ids, Collection<String> tags) {
+        var request = new BulkRequest();
+        ids.forEach(id -> request.add(FileRequests.removeTags(indexName(), id, tags)));
+        return client.bulk(request).map(response -> FileRequests.writeResults(response.getItems()));
+    }
+
+    @Override
+    public Mono<String> submitAddTags(FileFilter filter, Collection<String> tags) {
+        return submit("_update_by_query", FileRequests.addTagsByQuery(filter, tags));
+    }
+
+    @Override
+    public Mono<String> submitRemoveTags(FileFilter filter, Collection<String> tags) {
+        return submit("_update_by_query", FileRequests.removeTagsByQuery(filter, tags));
+    }
+
+    @Override
+    public Mono<TaskStatus> findTask(String taskId) {
+        return exchange(webClient -> webClient.get()
+                        .uri(uri -> uri.pathSegment("_tasks", taskId).build()))
+                .flatMap(body -> Mono.justOrEmpty(TaskStatus.fromJson(taskId, body)))
+                .onErrorResume(ElasticsearchStatusException.class, e -> e.status() == RestStatus.NOT_FOUND
+                        ? Mono.empty()
+                        : Mono.error(e));
+    }
+
+    private SearchSourceBuilder listing(FileFilter filter, int size) {
+        return FileRequests.listing(filter, size, properties.getSearch().getTrackTotalHitsUpTo());
+    }
+
+    private SearchSourceBuilder listing(FileFilter filter, Sort sort, int size) {
+        return FileRequests.listing(filter, sort, size, properties.getSearch().getTrackTotalHitsUpTo());
+    }
+
+    private Mono<Page<File>> search(SearchSourceBuilder source, Pageable pageable) {
+        return searchResponse(source).map(response -> {
+            var hits = response.getHits();
+            return new PageImpl<>(read(hits.getHits()), pageable, hits.getTotalHits().value);
+        });
+    }
+
+    private Mono<List<SearchHit>> batch(FileFilter filter, int batchSize, Object[] after) {
+        // Total is not needed, so hits are not counted past the batch
+        var source = listing(filter, batchSize).trackTotalHits(false);
+        if (after != null) source.searchAfter(after);
+        return client.search(new SearchRequest(indexName()).source(source)).collectList();
+    }
+
+    // Client hands out only the hits of a search, so the page and its total are read from the raw response
+    private Mono<SearchResponse> searchResponse(SearchSourceBuilder source) {
+        return exchange(webClient -> webClient.post()
+                        .uri(uri -> uri.pathSegment(indexName(), "_search").build())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(source.toString()))
+                .flatMap(body -> Mono.fromCallable(() -> parse(body)));
+    }
+
+    private Mono<String> submit(String endpoint, String body) {
+        var params = new LinkedMultiValueMap<String, String>();
+        FileRequests.TASK_PARAMS.forEach(params::add);
+        return exchange(webClient -> webClient.post()
+                        .uri(uri -> uri.pathSegment(indexName(), endpoint).queryParams(params).build())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body))
+                .map(TaskStatus::submittedId);
+    }
+
+    // Body of a raw request, or the status of Elasticsearch as an error
+    private Mono<String> exchange(Function<WebClient, WebClient.RequestHeadersSpec<?>> request) {
+        return client.execute(webClient -> request.apply(webClient).exchange())
+                .flatMap(response -> response.bodyToMono(String.class).flatMap(body -> response.statusCode().isError()
+                        ? Mono.error(new ElasticsearchStatusException(body, RestStatus.fromCode(response.rawStatusCode())))
+                        : Mono.just(body)));
+    }
+
+    private List<File> read(SearchHit[] hits) {
+        return Arrays.stream(hits)
+                .map(hit -> operations.getElasticsearchConverter().read(File.class, DocumentAdapters.from(hit)))
+                .collect(Collectors.toList());
+    }
+
+    private Mono<DocWriteResponse.Result> update(UpdateRequest request) {
+        return client.update(request)
+                .map(UpdateResponse::getResult)
+                .onErrorResume(ElasticsearchStatusException.class, e -> e.status() == RestStatus.NOT_FOUND
+                        ? Mono.just(DocWriteResponse.Result.NOT_FOUND)
+                        : Mono.error(e));
+    }
+
+    private String indexName() {
+        return operations.getIndexCoordinatesFor(File.class).getIndexName();
+    }
+
+    private static SearchResponse parse(String body) throws IOException {
+        try (var parser = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, body)) {
+            return SearchResponse.fromXContent(parser);
+        }
+    }
+
+    private static MultiGetResponse parseMultiGet(String body) throws IOException {
+        try (var parser = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, body)) {
+            return MultiGetResponse.fromXContent(parser);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.homework.repository.reactive;
+
+import com.homework.model.File;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking variant of {@link com.homework.repository.FileStore}: {@link ReactiveFileStorageRepo},
+ * or {@link com.homework.repository.lucene.ReactiveLuceneFileStore} with file-storage.store=lucene.
+ */
+public interface ReactiveFileStore extends ReactiveFileStorageRepoCustom {
+    // Implemented by the base repository on Elasticsearch
+
+    <S extends File> Mono<S> save(S file);
+
+    Mono<Boolean> existsById(String id);
+}
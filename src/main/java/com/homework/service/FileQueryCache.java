@@ -0,0 +1,108 @@
+package com.homework.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.homework.config.FileStorageProperties;
+import com.homework.dto.AllFilesRequestDto;
+import com.homework.dto.AllFilesResponseDto;
+import com.homework.dto.TagCountDto;
+import com.homework.dto.TagsRequestDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory caches of the read queries, evicted by size and time.
+ * Any write may change any listing, so writes clear all of them.
+ * Concurrent misses of the same request wait for one search, which runs outside of the cache locks.
+ */
+@Component
+public class FileQueryCache implements MeterBinder {
+
+    private final FileStorageProperties.Cache properties;
+
+    private final AsyncCache<AllFilesRequestDto, AllFilesResponseDto> pages;
+
+    private final AsyncCache<TagsRequestDto, List<TagCountDto>> tagCounts;
+
+    public FileQueryCache(FileStorageProperties properties) {
+        this.properties = properties.getCache();
+        this.pages = Caffeine.newBuilder()
+                .expireAfterWrite(this.properties.getPagesTtl())
+                .maximumSize(this.properties.getPagesSize())
+                .recordStats()
+                .buildAsync();
+        this.tagCounts = Caffeine.newBuilder()
+                .expireAfterWrite(this.properties.getTagsTtl())
+                .maximumSize(this.properties.getTagsSize())
+                .recordStats()
+                .buildAsync();
+    }
+
+    public AllFilesResponseDto page(AllFilesRequestDto dto, Supplier<AllFilesResponseDto> search) {
+        // Cursor pages continue a walk over the whole listing and are not repeated
+        if (dto.getCursor() != null || dto.getPage() >= properties.getMaxPage()) return search.get();
+        return get(pages, dto, search);
+    }
+
+    public List<TagCountDto> tagCounts(TagsRequestDto dto, Supplier<List<TagCountDto>> aggregation) {
+        return get(tagCounts, dto, aggregation);
+    }
+
+    // Non-blocking variants share the pending search with concurrent misses without waiting for it
+
+    public Mono<AllFilesResponseDto> page(AllFilesRequestDto dto, Mono<AllFilesResponseDto> search) {
+        if (dto.getCursor() != null || dto.getPage() >= properties.getMaxPage()) return search;
+        return get(pages, dto, search);
+    }
+
+    public Mono<List<TagCountDto>> tagCounts(TagsRequestDto dto, Mono<List<TagCountDto>> aggregation) {
+        return get(tagCounts, dto, aggregation);
+    }
+
+    public void invalidateAll() {
+        pages.synchronous().invalidateAll();
+        tagCounts.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, pages.synchronous(), "file.pages");
+        CaffeineCacheMetrics.monitor(registry, tagCounts.synchronous(), "file.tags");
+    }
+
+    // Caffeine computes the entry under a lock of the map, so only the empty future is put there
+    // and the caller which put it runs the query. A virtual thread waiting for the search is not pinned.
+    private static <K, V> V get(AsyncCache<K, V> cache, K key, Supplier<V> query) {
+        var loading = new CompletableFuture<V>();
+        var value = cache.get(key, (k, executor) -> loading);
+        if (value == loading) {
+            try {
+                loading.complete(query.get());
+            } catch (RuntimeException e) {
+                // Failed future is removed from the cache by Caffeine
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    // Search is subscribed once and put as its future, so a write clearing the cache while it runs drops it
+    // instead of its result being put afterwards. Empty results complete with null, which Caffeine removes.
+    private static <K, V> Mono<V> get(AsyncCache<K, V> cache, K key, Mono<V> query) {
+        return Mono.defer(() -> Mono.fromFuture(cache.get(key, (k, executor) -> query.toFuture())));
+    }
+}
@@ -1,217 +1,680 @@
 package com.homework.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.homework.config.FileStorageProperties;
 import com.homework.dto.*;
+import com.homework.exceptions.InvalidCursorException;
+import com.homework.exceptions.InvalidSortException;
 import com.homework.exceptions.NotFoundException;
-import com.homework.extensions.*;
+import com.homework.exceptions.ResultWindowTooLargeException;
+import com.homework.exceptions.TooManyBucketsException;
+import com.homework.extensions.ContentExtractor;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.extensions.MimeTypeTagger;
 import com.homework.model.File;
-import com.homework.repository.FileStorageRepo;
-import org.apache.tika.Tika;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.Response;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.index.query.TermQueryBuilder;
-import org.elasticsearch.index.reindex.BulkByScrollResponse;
-import org.elasticsearch.index.reindex.UpdateByQueryRequest;
-import org.elasticsearch.index.reindex.UpdateByQueryRequestBuilder;
-import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileContent;
+import com.homework.repository.FileContentStore;
+import com.homework.repository.FileIngestQueue;
+import com.homework.repository.FileRequests;
+import com.homework.repository.FileStore;
+import com.homework.repository.TaskStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static java.util.Collections.singletonMap;
-import static org.elasticsearch.index.query.QueryBuilders.termQuery;
-
+@Slf4j
 @Service
 public class FileStorageService {
 
-    private final FileStorageRepo repository;
+    // Node id and task number, as returned by Elasticsearch
+    private static final Pattern TASK_ID = Pattern.compile("[\\w-]+:\\d+");
+
+    private static final String ID_FIELD = "id";
+
+    private static final String SIZE_FIELD = "size";
+
+    // Fields of the listing sort, both have doc values
+    private static final Set<String> SORT_FIELDS = Set.of(ID_FIELD, SIZE_FIELD);
+
+    // Delete tasks are followed at this interval to delete the contents of their files when they complete
+    static final Duration TASK_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private final FileStore repository;
+
+    private final FileStorageProperties properties;
+
+    private final Validator validator;
+
+    private final Optional<FileIngestQueue> ingestQueue;
 
-    private final RestHighLevelClient client;
+    private final FileQueryCache cache;
 
-    public FileStorageService(FileStorageRepo repository, RestHighLevelClient client) {
+    private final FileTypeRegistry fileTypes;
+
+    private final Optional<MimeTypeTagger> mimeTypes;
+
+    private final FileContentStore contents;
+
+    private final Optional<ContentExtractor> extractor;
+
+    // Follows delete tasks and deletes the contents left by them, one sweep at a time
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        var thread = new Thread(task, "content-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FileStorageService(FileStore repository,
+                              FileStorageProperties properties,
+                              Validator validator,
+                              Optional<FileIngestQueue> ingestQueue,
+                              FileQueryCache cache,
+                              FileTypeRegistry fileTypes,
+                              Optional<MimeTypeTagger> mimeTypes,
+                              FileContentStore contents,
+                              Optional<ContentExtractor> extractor) {
         this.repository = repository;
-        this.client = client;
+        this.properties = properties;
+        this.validator = validator;
+        this.ingestQueue = ingestQueue;
+        this.cache = cache;
+        this.fileTypes = fileTypes;
+        this.mimeTypes = mimeTypes;
+        this.contents = contents;
+        this.extractor = extractor;
     }
 
     public IDDto upload(FileCreateDto dto) {
+        var newFile = toEntity(dto);
+        if (ingestQueue.isPresent()) {
+            // File becomes visible after the next flush of the queue
+            ingestQueue.get().enqueue(newFile);
+            cache.invalidateAll();
+            return new IDDto(newFile.getId());
+        }
+        var id = repository.save(newFile).getId();
+        cache.invalidateAll();
+        return new IDDto(id);
+    }
+
+    /**
+     * Stores one file per line of NDJSON. A line which is not a file gets an error in its place,
+     * the files of the other lines are still stored.
+     */
+    public BulkResponseDto bulkUploadLines(Iterator<String> lines, ObjectReader reader) {
+        return bulkUpload(new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return lines.hasNext();
+            }
+
+            @Override
+            public FileCreateDto next() {
+                return readLine(reader, lines.next());
+            }
+        });
+    }
+
+    public BulkResponseDto bulkUpload(Iterator<FileCreateDto> dtos) {
+        var items = new ArrayList<BulkItemDto>();
+        var chunk = new ArrayList<File>();
+        var chunkItems = new ArrayList<BulkItemDto>();
+        var chunkSize = properties.getBulk().getChunkSize();
+
+        while (dtos.hasNext()) {
+            FileCreateDto dto;
+            try {
+                dto = dtos.next();
+            } catch (RuntimeJsonMappingException e) {
+                items.add(new BulkItemDto(null, false, e.getMessage()));
+                continue;
+            }
+            var violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                items.add(new BulkItemDto(null, false, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .collect(Collectors.joining(" "))));
+                continue;
+            }
+
+            var file = toEntity(dto);
+            var item = new BulkItemDto(file.getId(), true, null);
+            chunk.add(file);
+            chunkItems.add(item);
+            items.add(item);
+
+            if (chunk.size() == chunkSize) {
+                flush(chunk, chunkItems);
+            }
+        }
+        if (!chunk.isEmpty()) flush(chunk, chunkItems);
+
+        return new BulkResponseDto(items.stream().anyMatch(item -> !item.isSuccess()), items);
+    }
+
+    private void flush(List<File> files, List<BulkItemDto> items) {
+        var failures = repository.bulkSave(files);
+        cache.invalidateAll();
+        for (BulkItemDto item : items) {
+            if (failures.containsKey(item.getId())) {
+                item.setSuccess(false);
+                item.setError(failures.get(item.getId()));
+            }
+        }
+        files.clear();
+        items.clear();
+    }
+
+    private File toEntity(FileCreateDto dto) {
+        return toEntity(dto, fileTypes, mimeTypes);
+    }
+
+    static File toEntity(FileCreateDto dto, FileTypeRegistry fileTypes, Optional<MimeTypeTagger> mimeTypes) {
         List<String> tagsList = new ArrayList<>();
         if (dto.getTags() != null)
             tagsList.addAll(dto.getTags());
 
-        Optional<String> extension = getExtensionByStringHandling(dto.getName());
-        if (extension.isPresent()) {
-            FileType type = getFileType(extension.get());
-            if (type != null) {
-                tagsList.add(type.getType());
-            }
+        String type = fileTypes.classify(dto.getName());
+        if (type != null) {
+            tagsList.add(type);
         }
 
-        // This variant could be use if we need MIME type to add to tags
-
-        // addTagForMIME(tags, dto.getName());
+        // MIME tag is often the same as the type tag, as "audio" or "image"
+        if (mimeTypes.isPresent()) {
+            String mimeTag = mimeTypes.get().tag(dto.getName());
+            if (!tagsList.contains(mimeTag)) tagsList.add(mimeTag);
+        }
 
-        var newFile = File.builder()
+        return File.builder()
                 .id(UUID.randomUUID().toString())
                 .name(dto.getName())
                 .size(dto.getSize())
-                .tags(String.join(" ", tagsList))
+                .tags(tagsList)
                 .build();
-        return new IDDto(repository.save(newFile).getId());
     }
 
     public void deleteById(String id) throws NotFoundException {
-        if (repository.existsById(id))
-            repository.deleteById(id);
-        else throw new NotFoundException("There is no file with such id");
+        if (repository.deleteFile(id) == DocWriteResponse.Result.NOT_FOUND) {
+            throw new NotFoundException("There is no file with such id");
+        }
+        contents.delete(id);
+        cache.invalidateAll();
     }
 
-    public void deleteTags(String id, List<String> tags) throws NotFoundException {
-        if (!repository.existsById(id)) throw new NotFoundException("File with such id is not exist");
+    /**
+     * Stores the content of the file and sets the size and content hash of the file to those of the stored bytes.
+     * Content is streamed to disk chunk by chunk, a previous content is replaced when the new one is complete.
+     */
+    public void putContent(String id, InputStream content) throws NotFoundException, IOException {
+        if (!repository.existsById(id)) throw new NotFoundException("There is no file with such id");
+        updateContent(id, contents.write(id, content));
+    }
 
-//        Possible implementation with update API
+    /**
+     * Stores the content of another file with the SHA-256 for the file, so a known document is not sent again.
+     *
+     * @throws NotFoundException if no file has a content with the hash, the client uploads the content then
+     */
+    public void copyContent(String id, String contentHash) throws NotFoundException, IOException {
+        if (!repository.existsById(id)) throw new NotFoundException("There is no file with such id");
+        var hash = contentHash.toLowerCase(Locale.ROOT);
+        var source = repository.findAllByFilter(FileFilter.builder().contentHash(hash).build(), PageRequest.of(0, 1))
+                .stream()
+                .findFirst();
+
+        // Source could be deleted or get another content since the search
+        var content = source.isPresent() ? contents.copy(source.get().getId(), id, hash) : Optional.<FileContent>empty();
+        if (content.isEmpty()) throw new NotFoundException("There is no content with such hash");
+        updateContent(id, content.get());
+    }
 
-//        UpdateByQueryRequest request = new UpdateByQueryRequest("files");
-//        Map<String, Object> parameters = singletonMap("tags", tags);
-//
-//
-//        String expr = "if(params.tags.stream()" +
-//                ".containsAll( Arrays.asList(doc['tags'].split(\" \") ) { " +
-//                    "Arrays.asList(doc['tags'].split(\" \").removeAll(params.tags) " +
-//                "}";
-//
-//        request.setScript(new Script(ScriptType.INLINE,
-//                "painless",
-//                expr,
-//                parameters));
-//        request.setQuery(new TermQueryBuilder("id", id));
-//        BulkByScrollResponse response = client.updateByQuery(request, RequestOptions.DEFAULT);
+    private void updateContent(String id, FileContent content) throws NotFoundException {
+        // File was deleted while its content was stored
+        if (repository.updateContent(id, content.getSize(), content.getSha256()) == DocWriteResponse.Result.NOT_FOUND) {
+            contents.delete(id);
+            throw new NotFoundException("There is no file with such id");
+        }
+        cache.invalidateAll();
+        // Extractor holds its own reference, as the content can be replaced before it is parsed
+        extractor.ifPresent(e -> contents.lease(content).ifPresent(leased -> e.submit(id, leased)));
+    }
 
-        var file = repository.findById(id).get();
-        var currentTags = file.getTags();
+    public FileContent getContent(String id) throws NotFoundException {
+        return contents.find(id).orElseThrow(() -> new NotFoundException("There is no content of the file"));
+    }
 
-        if (currentTags == null || currentTags.equals("")) throw new NotFoundException("Tag not found on file");
+    /**
+     * Deletes the files given by id with _bulk requests of file-storage.bulk.chunk-size files,
+     * or submits a task deleting all files matching the filter and returns its id.
+     */
+    public FilesDeleteResponseDto bulkDelete(FilesDeleteRequestDto dto) {
+        if (dto.getFilter() != null) {
+            var task = repository.submitDelete(toFilter(dto.getFilter()));
+            cache.invalidateAll();
+            followDeleteTask(task);
+            return deleteSubmittedResponse(task);
+        }
+        return toDeleteResponse(inChunks(dto.getIds(), ids -> {
+            Map<String, DocWriteResponse.Result> results;
+            try {
+                results = repository.bulkDelete(ids);
+            } catch (RuntimeException e) {
+                // Files before the failed item are deleted already, their contents go with them
+                try {
+                    deleteAbsentContents(ids);
+                } catch (RuntimeException cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+                throw e;
+            }
+            contents.deleteAll(results.keySet());
+            return results;
+        }));
+    }
 
-        var currentTagsList = new ArrayList<>(Arrays.asList(currentTags.split(" ")));
+    /**
+     * Deletes the contents of the files which are not stored any more, as those deleted by a filter,
+     * checking the ids of the contents with one request per file-storage.bulk.chunk-size of them.
+     *
+     * @return number of deleted contents
+     */
+    public int deleteOrphanContents() {
+        var deleted = 0;
+        var batch = new ArrayList<String>();
+        try (var ids = contents.ids()) {
+            for (var it = ids.iterator(); it.hasNext(); ) {
+                batch.add(it.next());
+                if (batch.size() == properties.getBulk().getChunkSize() || !it.hasNext()) {
+                    deleted += deleteAbsentContents(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (deleted > 0) log.info("Deleted {} contents of files which are not stored", deleted);
+        return deleted;
+    }
+
+    // Contents of files deleted by a filter while the application was stopped
+    @EventListener(ApplicationReadyEvent.class)
+    public void deleteOrphanContentsOnStart() {
+        sweeper.execute(this::sweep);
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private int deleteAbsentContents(List<String> ids) {
+        var absent = new ArrayList<>(ids);
+        absent.removeAll(repository.findExistingIds(ids));
+        contents.deleteAll(absent);
+        return absent.size();
+    }
 
-        // Check if currentTags contains all tags from list to delete
-        if (currentTagsList.containsAll(tags)) {
-            currentTagsList.removeAll(tags);
-            file.setTags(String.join(" ", currentTagsList));
-            repository.save(file);
-        } else throw new NotFoundException("Tag not found on file");
+    // Task which is not found any more is complete as well
+    private void followDeleteTask(String taskId) {
+        sweeper.schedule(() -> {
+            try {
+                var status = repository.findTask(taskId);
+                if (status.isPresent() && !status.get().isCompleted()) followDeleteTask(taskId);
+                else sweep();
+            } catch (RuntimeException e) {
+                log.warn("Delete task {} was not followed, contents of its files are deleted on the next start", taskId, e);
+            }
+        }, TASK_POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void sweep() {
+        try {
+            deleteOrphanContents();
+        } catch (RuntimeException e) {
+            log.warn("Contents of deleted files were not deleted", e);
+        }
+    }
+
+    public FilesDeleteResponseDto getDeleteTask(String taskId) throws NotFoundException {
+        return toDeleteResponse(findTask(taskId, FileRequests.DELETE_BY_QUERY_ACTION));
+    }
+
+    public void deleteTags(String id, List<String> tags) throws NotFoundException {
+        var result = repository.removeTags(id, tags);
+        if (result == DocWriteResponse.Result.UPDATED) cache.invalidateAll();
+        if (result == DocWriteResponse.Result.NOT_FOUND) throw new NotFoundException("File with such id is not exist");
+
+        // Script leaves the file untouched if it has not all of the tags to delete
+        if (result == DocWriteResponse.Result.NOOP) throw new NotFoundException("Tag not found on file");
     }
 
     public void assignTags(String id, List<String> tags) throws NotFoundException {
-        if (!repository.existsById(id)) throw new NotFoundException("File with such id is not exist");
-        var file = repository.findById(id).get();
-        
-        var currentTags = file.getTags();
-        
-        if (currentTags != null && !currentTags.equals("")) {
-            
-            var currentTagsSet = new HashSet<>(Arrays.asList(currentTags.split(" ")));
-            
-            currentTagsSet.addAll(tags);
-            
-            file.setTags(String.join(" ", currentTagsSet));
-            
-        } else file.setTags(String.join(" ", tags));
-        repository.save(file);
+        var result = repository.addTags(id, tags);
+        if (result == DocWriteResponse.Result.UPDATED) cache.invalidateAll();
+        if (result == DocWriteResponse.Result.NOT_FOUND) throw new NotFoundException("File with such id is not exist");
+    }
+
+    /**
+     * Adds the tags to the files given by id with _bulk requests of file-storage.bulk.chunk-size files,
+     * or submits a task adding them to all files matching the filter and returns its id.
+     */
+    public TagsUpdateResponseDto bulkAssignTags(TagsUpdateRequestDto dto) {
+        if (dto.getFilter() != null) {
+            return submitted(repository.submitAddTags(toFilter(dto.getFilter()), dto.getTags()));
+        }
+        return updateInChunks(dto.getIds(), ids -> repository.bulkAddTags(ids, dto.getTags()));
+    }
+
+    /**
+     * Removes the tags from the files given by id, or from all files matching the filter with a task.
+     * Files which have not all of the tags are left untouched.
+     */
+    public TagsUpdateResponseDto bulkDeleteTags(TagsUpdateRequestDto dto) {
+        if (dto.getFilter() != null) {
+            return submitted(repository.submitRemoveTags(toFilter(dto.getFilter()), dto.getTags()));
+        }
+        return updateInChunks(dto.getIds(), ids -> repository.bulkRemoveTags(ids, dto.getTags()));
+    }
+
+    public TagsUpdateResponseDto getTagsTask(String taskId) throws NotFoundException {
+        return toTagsResponse(findTask(taskId, FileRequests.UPDATE_BY_QUERY_ACTION));
+    }
+
+    private TaskStatus findTask(String taskId, String action) throws NotFoundException {
+        var status = isTaskId(taskId) ? repository.findTask(taskId) : Optional.<TaskStatus>empty();
+        if (status.isEmpty() || !action.equals(status.get().getAction())) {
+            throw new NotFoundException("There is no task with such id");
+        }
+
+        // Listings cached while the task ran may miss its last batches
+        if (status.get().isCompleted()) cache.invalidateAll();
+        return status.get();
+    }
+
+    private TagsUpdateResponseDto updateInChunks(List<String> ids,
+                                                 Function<List<String>, Map<String, DocWriteResponse.Result>> update) {
+        return toTagsResponse(inChunks(ids, update));
+    }
+
+    private Map<String, DocWriteResponse.Result> inChunks(List<String> ids,
+                                                          Function<List<String>, Map<String, DocWriteResponse.Result>> write) {
+        var results = new LinkedHashMap<String, DocWriteResponse.Result>();
+        var chunkSize = properties.getBulk().getChunkSize();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            results.putAll(write.apply(ids.subList(from, Math.min(from + chunkSize, ids.size()))));
+            cache.invalidateAll();
+        }
+        return results;
+    }
+
+    private TagsUpdateResponseDto submitted(String taskId) {
+        cache.invalidateAll();
+        return submittedResponse(taskId);
+    }
+
+    static TagsUpdateResponseDto submittedResponse(String taskId) {
+        return new TagsUpdateResponseDto(taskId, false, 0, 0, 0, 0, null, null);
+    }
+
+    static FilesDeleteResponseDto deleteSubmittedResponse(String taskId) {
+        return new FilesDeleteResponseDto(taskId, false, 0, 0, 0, null, null);
+    }
+
+    static FilesDeleteResponseDto toDeleteResponse(Map<String, DocWriteResponse.Result> results) {
+        var missing = results.entrySet().stream()
+                .filter(result -> result.getValue() == DocWriteResponse.Result.NOT_FOUND)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        return new FilesDeleteResponseDto(null, true, results.size(), results.size() - missing.size(), 0,
+                missing, List.of());
+    }
+
+    static FilesDeleteResponseDto toDeleteResponse(TaskStatus status) {
+        return new FilesDeleteResponseDto(status.getId(), status.isCompleted(), status.getTotal(), status.getDeleted(),
+                status.getVersionConflicts(), null, status.getFailures());
+    }
+
+    static TagsUpdateResponseDto toTagsResponse(Map<String, DocWriteResponse.Result> results) {
+        var missing = new ArrayList<String>();
+        long updated = 0;
+        long noops = 0;
+        for (var result : results.entrySet()) {
+            if (result.getValue() == DocWriteResponse.Result.UPDATED) updated++;
+            else if (result.getValue() == DocWriteResponse.Result.NOOP) noops++;
+            else if (result.getValue() == DocWriteResponse.Result.NOT_FOUND) missing.add(result.getKey());
+        }
+        return new TagsUpdateResponseDto(null, true, results.size(), updated, noops, 0, missing, List.of());
+    }
+
+    static TagsUpdateResponseDto toTagsResponse(TaskStatus status) {
+        return new TagsUpdateResponseDto(status.getId(), status.isCompleted(), status.getTotal(), status.getUpdated(),
+                status.getNoops(), status.getVersionConflicts(), null, status.getFailures());
+    }
+
+    // Elasticsearch answers 400 to a malformed id, which is reported as an unknown task instead
+    static boolean isTaskId(String taskId) {
+        return TASK_ID.matcher(taskId).matches();
     }
 
     public AllFilesResponseDto getAll(AllFilesRequestDto dto) {
-        var page = dto.getPage();
-        var size = dto.getSize();
-        var tags = dto.getTags();
-        var query = dto.getQ();
-
-        Pageable pageable = PageRequest.of(page, size);
-        if (tags == null && query == null) {
-            var list = repository.findAll(pageable)
-                    .getContent()
-                    .stream()
-                    .map(FileDto::fromEntity)
-                    .collect(Collectors.toList());
-            return new AllFilesResponseDto((int) repository.count(), list);
-        } else if (query == null) {
-            
-            return findByTags(tags, pageable);
-            
-        } else if (tags == null) {
-
-            return findByQuery(query, pageable);
+        return cache.page(dto, () -> search(dto));
+    }
 
+    private AllFilesResponseDto search(AllFilesRequestDto dto) {
+        var filter = toFilter(dto);
+        var sort = toSort(dto.getSort());
+        Pageable pageable = toPageable(dto, sort, properties.getSearch());
+
+        // Page and total come from the same search response
+        Page<File> files;
+        if (dto.getCursor() == null) {
+            files = repository.findAllByFilter(filter, pageable);
+        } else if (sort.isUnsorted()) {
+            files = repository.findAllByFilterAfter(filter, decodeCursor(dto.getCursor()), dto.getSize());
         } else {
+            files = repository.findAllByFilterAfter(filter, sort, decodeCursor(dto.getCursor(), sort), dto.getSize());
+        }
+        return toResponse(files, dto.getSize(), sort);
+    }
+
+    /**
+     * Page of the listing, rejected if it ends past max-result-window files, which are listed with the cursor.
+     */
+    static Pageable toPageable(AllFilesRequestDto dto, Sort sort, FileStorageProperties.Search search) {
+        if ((long) dto.getPage() * dto.getSize() + dto.getSize() > search.getMaxResultWindow()) {
+            throw new ResultWindowTooLargeException("Page and size must end within the first "
+                    + search.getMaxResultWindow() + " files, list deeper files with the cursor of the previous page");
+        }
+        return PageRequest.of(dto.getPage(), dto.getSize(), sort);
+    }
 
-            return findByQueryAndTags(tags, query, pageable);
+    static AllFilesResponseDto toResponse(Page<File> files, int size) {
+        return toResponse(files, size, Sort.unsorted());
+    }
+
+    static AllFilesResponseDto toResponse(Page<File> files, int size, Sort sort) {
+        var list = files.stream().map(FileDto::fromEntity).collect(Collectors.toList());
+
+        // Full page may be followed by another one, continue after the sort values of its last file
+        String cursor = list.size() == size ? encodeCursor(list.get(list.size() - 1), sort) : null;
+        return new AllFilesResponseDto((int) files.getTotalElements(), list, cursor);
+    }
+
+    /**
+     * Most frequent tags among the files matching the tags and query, cached for a short time per filter.
+     */
+    public List<TagCountDto> countTags(TagsRequestDto dto) {
+        return cache.tagCounts(dto, () -> repository.countTags(toFilter(dto.getQ(), dto.getTags()), dto.getSize())
+                .entrySet()
+                .stream()
+                .map(count -> new TagCountDto(count.getKey(), count.getValue()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Count of files matching the filter per range of interval bytes, lowest sizes first.
+     */
+    public List<SizeCountDto> sizeHistogram(SizeHistogramRequestDto dto) {
+        checkBuckets(dto, properties.getSearch());
+        return toSizeCounts(repository.sizeHistogram(toFilter(dto), dto.getInterval()), dto.getInterval());
+    }
 
+    // Ranges are aligned on multiples of the interval. Without maxSize the count is known only to Elasticsearch,
+    // which rejects it above search.max_buckets
+    static void checkBuckets(SizeHistogramRequestDto dto, FileStorageProperties.Search search) {
+        if (dto.getMaxSize() == null) return;
+        long min = dto.getMinSize() == null ? 0 : dto.getMinSize();
+        long buckets = Math.floorDiv(dto.getMaxSize(), dto.getInterval()) - Math.floorDiv(min, dto.getInterval()) + 1;
+        if (buckets > search.getMaxBuckets()) {
+            throw new TooManyBucketsException("Interval must split the sizes from minSize to maxSize into at most "
+                    + search.getMaxBuckets() + " ranges, use a wider interval or a narrower size range");
         }
     }
 
-    private AllFilesResponseDto findByTags(List<String> tags, Pageable pageable) {
-//        QueryBuilder queryBuilder = new MatchQueryBuilder("tags", String.join(" ", tags)).operator(Operator.AND);
-//        repository.search(queryBuilder, pageable);
-        
-        Page<File> files = repository.findAllByTagsIn(tags, pageable);
-        var list = files.toList().stream().map(FileDto::fromEntity).collect(Collectors.toList());
-        return new AllFilesResponseDto(repository.countByTagsIn(tags), list);
+    // Lines are read one by one, so a malformed line fails alone as a file failing validation
+    static FileCreateDto readLine(ObjectReader reader, String line) {
+        try {
+            return reader.readValue(line);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeJsonMappingException("Line is not a file: " + e.getOriginalMessage());
+        }
+    }
+
+    static List<SizeCountDto> toSizeCounts(Map<Long, Long> counts, long interval) {
+        return counts.entrySet()
+                .stream()
+                .map(count -> new SizeCountDto(count.getKey(), count.getKey() + interval, count.getValue()))
+                .collect(Collectors.toList());
     }
 
-    private AllFilesResponseDto findByQuery(String query, Pageable pageable) {
-        Page<File> files = repository.findAllByNameContains(query, pageable);
-        var list = files.toList().stream().map(FileDto::fromEntity).collect(Collectors.toList());
-        return new AllFilesResponseDto(repository.countByNameContaining(query), list);
+    /**
+     * All files matching the tags and query of the listing, ignoring its pagination.
+     * The stream fetches files lazily and must be consumed before the request ends.
+     */
+    public Stream<FileDto> export(AllFilesRequestDto dto) {
+        return repository.streamAllByFilter(toFilter(dto), properties.getSearch().getExportBatchSize())
+                .map(FileDto::fromEntity);
     }
 
-    private AllFilesResponseDto findByQueryAndTags(List<String> tags, String query, Pageable pageable) {
-        Page<File> files = repository.findAllByNameContainsAndTagsIn(query, tags, pageable);
-        var list = files.toList().stream().map(FileDto::fromEntity).collect(Collectors.toList());
-        return new AllFilesResponseDto(list.size(), list);
+    static FileFilter toFilter(AllFilesRequestDto dto) {
+        return FileFilter.builder()
+                .query(dto.getQ())
+                .tags(dto.getTags())
+                .contentHash(dto.getContentHash() == null ? null : dto.getContentHash().toLowerCase(Locale.ROOT))
+                .minSize(dto.getMinSize())
+                .maxSize(dto.getMaxSize())
+                .build();
     }
 
-    private FileType getFileType(String extension) {
-        if (Arrays.stream(AudioType.values())
-                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
-            return AudioType.valueOf(extension.toUpperCase());
+    static FileFilter toFilter(FileFilterDto dto) {
+        return FileFilter.builder()
+                .query(dto.getQ())
+                .nameOnly(true)
+                .tags(dto.getTags())
+                .minSize(dto.getMinSize())
+                .maxSize(dto.getMaxSize())
+                .build();
+    }
 
-        if (Arrays.stream(DocType.values()).
-                anyMatch(type -> type.toString().equals(extension.toUpperCase())))
-            return DocType.valueOf(extension.toUpperCase());
+    static FileFilter toFilter(SizeHistogramRequestDto dto) {
+        return FileFilter.builder()
+                .query(dto.getQ())
+                .tags(dto.getTags())
+                .minSize(dto.getMinSize())
+                .maxSize(dto.getMaxSize())
+                .build();
+    }
 
-        if (Arrays.stream(VideoType.values())
-                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
-            return VideoType.valueOf(extension.toUpperCase());
+    static FileFilter toFilter(String query, List<String> tags) {
+        return FileFilter.builder()
+                .query(query)
+                .tags(tags)
+                .build();
+    }
 
-        if (Arrays.stream(ImageType.values())
-                .anyMatch(type -> type.toString().equals(extension.toUpperCase())))
-            return ImageType.valueOf(extension.toUpperCase());
+    /**
+     * Order of the listing from the sort parameter, as size or size,desc. The default order by id is unsorted,
+     * which keeps its cursors and lets the search stop early on the index sorted by id.
+     */
+    static Sort toSort(String sort) {
+        if (sort == null || sort.isEmpty()) return Sort.unsorted();
+        var parts = sort.split(",");
+        if (parts.length > 2 || !SORT_FIELDS.contains(parts[0])) {
+            throw new InvalidSortException("Sort must be id or size, optionally followed by ,asc or ,desc");
+        }
+        var direction = parts.length == 1
+                ? Sort.Direction.ASC
+                : Sort.Direction.fromOptionalString(parts[1])
+                        .orElseThrow(() -> new InvalidSortException("Sort direction must be asc or desc"));
+        if (parts[0].equals(ID_FIELD) && direction.isAscending()) return Sort.unsorted();
+        return Sort.by(direction, parts[0]);
+    }
 
-        // If there is no extension in enums, there would not be any file type
-        return null;
+    // Fields whose values continue a sorted listing, the id comes last unless it is sorted on
+    private static List<String> cursorFields(Sort sort) {
+        var fields = sort.stream().map(Sort.Order::getProperty).collect(Collectors.toList());
+        if (!fields.contains(ID_FIELD)) fields.add(ID_FIELD);
+        return fields;
     }
 
-    private Optional<String> getExtensionByStringHandling(String fileName) {
-        return Optional.ofNullable(fileName)
-                .filter(f -> f.contains("."))
-                .map(f -> f.substring(fileName.lastIndexOf(".") + 1));
+    // Cursor of the listing by id is the last id, other cursors join the sort values with commas
+    private static String encodeCursor(FileDto last, Sort sort) {
+        if (sort.isUnsorted()) return encodeCursor(last.getId());
+        return encodeCursor(cursorFields(sort).stream()
+                .map(field -> field.equals(SIZE_FIELD) ? String.valueOf(last.getSize()) : last.getId())
+                .collect(Collectors.joining(",")));
     }
 
+    private static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
 
-    // For MIME types as application/zip
-    private void addTagForMIME(List<String> tags, String name) {
-        Tika tika = new Tika();
-        String mimeType = tika.detect(name);
+    static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Cursor is not valid");
+        }
+    }
 
-        if (mimeType != null) {
-            String newTag = mimeType.substring(0, mimeType.indexOf('/'));
-            tags.add(newTag);
+    // Sort values for search_after, a cursor of another sort is not valid
+    static Object[] decodeCursor(String cursor, Sort sort) {
+        var fields = cursorFields(sort);
+        // Id is the last value and is not split even if it contains a comma
+        var values = decodeCursor(cursor).split(",", fields.size());
+        if (values.length != fields.size()) throw new InvalidCursorException("Cursor is not valid");
+        var after = new Object[values.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                after[i] = fields.get(i).equals(SIZE_FIELD) ? (Object) Long.parseLong(values[i]) : values[i];
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Cursor is not valid");
         }
+        return after;
     }
 }
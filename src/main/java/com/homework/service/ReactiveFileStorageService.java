@@ -0,0 +1,425 @@
+package com.homework.service;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.homework.config.FileStorageProperties;
+import com.homework.dto.*;
+import com.homework.exceptions.NotFoundException;
+import com.homework.extensions.ContentExtractor;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.extensions.MimeTypeTagger;
+import com.homework.model.File;
+import com.homework.repository.FileContent;
+import com.homework.repository.FileContentStore;
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileIngestQueue;
+import com.homework.repository.FileRequests;
+import com.homework.repository.TaskStatus;
+import com.homework.repository.reactive.ReactiveFileStore;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Operations of {@link FileStorageService} on the reactive repository, none of them blocks the calling thread.
+ * Used instead of it when the application runs with spring.main.web-application-type=reactive.
+ */
+@Slf4j
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileStorageService {
+
+    private final ReactiveFileStore repository;
+
+    private final FileStorageProperties properties;
+
+    private final Validator validator;
+
+    private final Optional<FileIngestQueue> ingestQueue;
+
+    private final FileQueryCache cache;
+
+    private final FileTypeRegistry fileTypes;
+
+    private final Optional<MimeTypeTagger> mimeTypes;
+
+    private final FileContentStore contents;
+
+    private final Optional<ContentExtractor> extractor;
+
+    public ReactiveFileStorageService(ReactiveFileStore repository,
+                                      FileStorageProperties properties,
+                                      Validator validator,
+                                      Optional<FileIngestQueue> ingestQueue,
+                                      FileQueryCache cache,
+                                      FileTypeRegistry fileTypes,
+                                      Optional<MimeTypeTagger> mimeTypes,
+                                      FileContentStore contents,
+                                      Optional<ContentExtractor> extractor) {
+        this.repository = repository;
+        this.properties = properties;
+        this.validator = validator;
+        this.ingestQueue = ingestQueue;
+        this.cache = cache;
+        this.fileTypes = fileTypes;
+        this.mimeTypes = mimeTypes;
+        this.contents = contents;
+        this.extractor = extractor;
+    }
+
+    public Mono<IDDto> upload(FileCreateDto dto) {
+        return Mono.defer(() -> {
+            var newFile = FileStorageService.toEntity(dto, fileTypes, mimeTypes);
+            if (ingestQueue.isPresent()) {
+                // Enqueue takes a permit or fails and hands the request to the ingest thread,
+                // bulks wait there, never on the event loop
+                ingestQueue.get().enqueue(newFile);
+                cache.invalidateAll();
+                return Mono.just(new IDDto(newFile.getId()));
+            }
+            return repository.save(newFile)
+                    .doOnNext(saved -> cache.invalidateAll())
+                    .map(saved -> new IDDto(saved.getId()));
+        });
+    }
+
+    /**
+     * Validates and stores the files chunk by chunk as they arrive, the next chunk is read
+     * only after the previous one is indexed.
+     */
+    public Mono<BulkResponseDto> bulkUpload(Flux<FileCreateDto> dtos) {
+        return upload(dtos.map(dto -> () -> dto));
+    }
+
+    /**
+     * Stores one file per line of NDJSON as {@link #bulkUpload(Flux)}. A line which is not a file gets an error
+     * in its place, the files of the other lines are still stored.
+     */
+    public Mono<BulkResponseDto> bulkUploadLines(Flux<String> lines, ObjectReader reader) {
+        return upload(lines.map(line -> () -> FileStorageService.readLine(reader, line)));
+    }
+
+    private Mono<BulkResponseDto> upload(Flux<Supplier<FileCreateDto>> reads) {
+        return Mono.defer(() -> {
+            var items = new ArrayList<BulkItemDto>();
+            return reads
+                    .<Map.Entry<File, BulkItemDto>>handle((read, sink) -> {
+                        FileCreateDto dto;
+                        try {
+                            dto = read.get();
+                        } catch (RuntimeJsonMappingException e) {
+                            items.add(new BulkItemDto(null, false, e.getMessage()));
+                            return;
+                        }
+                        var violations = validator.validate(dto);
+                        if (!violations.isEmpty()) {
+                            items.add(new BulkItemDto(null, false, violations.stream()
+                                    .map(ConstraintViolation::getMessage)
+                                    .collect(Collectors.joining(" "))));
+                            return;
+                        }
+
+                        var file = FileStorageService.toEntity(dto, fileTypes, mimeTypes);
+                        var item = new BulkItemDto(file.getId(), true, null);
+                        items.add(item);
+                        sink.next(Map.entry(file, item));
+                    })
+                    .buffer(properties.getBulk().getChunkSize())
+                    .concatMap(this::flush)
+                    .then(Mono.fromSupplier(() ->
+                            new BulkResponseDto(items.stream().anyMatch(item -> !item.isSuccess()), items)));
+        });
+    }
+
+    private Mono<Void> flush(List<Map.Entry<File, BulkItemDto>> chunk) {
+        var files = chunk.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        return repository.bulkSave(files)
+                .doOnNext(failures -> {
+                    cache.invalidateAll();
+                    for (var entry : chunk) {
+                        var item = entry.getValue();
+                        if (failures.containsKey(item.getId())) {
+                            item.setSuccess(false);
+                            item.setError(failures.get(item.getId()));
+                        }
+                    }
+                })
+                .then();
+    }
+
+    public Mono<Void> deleteById(String id) {
+        return repository.deleteFile(id).flatMap(result -> {
+            if (result == DocWriteResponse.Result.NOT_FOUND) return Mono.error(new NotFoundException("There is no file with such id"));
+            cache.invalidateAll();
+            return deleteContents(List.of(id));
+        });
+    }
+
+    /**
+     * Streams the body to disk chunk by chunk and sets the size and content hash of the file to those of the stored bytes.
+     */
+    public Mono<Void> putContent(String id, Flux<DataBuffer> content) {
+        return repository.existsById(id)
+                .flatMap(exists -> exists
+                        ? contents.write(id, content)
+                        : Mono.error(new NotFoundException("There is no file with such id")))
+                .flatMap(stored -> updateContent(id, stored));
+    }
+
+    /**
+     * Stores the content of another file with the SHA-256 for the file, or fails with NotFoundException
+     * if no file has such content.
+     */
+    public Mono<Void> copyContent(String id, String contentHash) {
+        var hash = contentHash.toLowerCase(Locale.ROOT);
+        return repository.existsById(id)
+                .flatMap(exists -> exists
+                        ? repository.findAllByFilter(FileFilter.builder().contentHash(hash).build(), PageRequest.of(0, 1))
+                        : Mono.error(new NotFoundException("There is no file with such id")))
+                .flatMap(sources -> sources.stream().findFirst()
+                        .map(source -> Mono.fromCallable(() -> contents.copy(source.getId(), id, hash))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flatMap(Mono::justOrEmpty))
+                        .orElse(Mono.empty()))
+                .switchIfEmpty(Mono.error(new NotFoundException("There is no content with such hash")))
+                .flatMap(stored -> updateContent(id, stored));
+    }
+
+    private Mono<Void> updateContent(String id, FileContent content) {
+        return repository.updateContent(id, content.getSize(), content.getSha256())
+                .flatMap(result -> {
+                    // File was deleted while its content was stored
+                    if (result == DocWriteResponse.Result.NOT_FOUND) {
+                        return deleteContents(List.of(id)).then(Mono.error(new NotFoundException("There is no file with such id")));
+                    }
+                    cache.invalidateAll();
+                    // Only queued, parsing runs on the extractor workers with their own reference on the chunks
+                    extractor.ifPresent(e -> contents.lease(content).ifPresent(leased -> e.submit(id, leased)));
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<FileContent> getContent(String id) {
+        return Mono.fromCallable(() -> contents.find(id))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                // Content found for a cancelled download releases its chunks
+                .doOnDiscard(FileContent.class, FileContent::close)
+                .switchIfEmpty(Mono.error(new NotFoundException("There is no content of the file")));
+    }
+
+    private Mono<Void> deleteContents(Collection<String> ids) {
+        return Mono.fromRunnable(() -> contents.deleteAll(ids)).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    /**
+     * Deletes the files given by id chunk by chunk, or submits a task for the files matching the filter.
+     */
+    public Mono<FilesDeleteResponseDto> bulkDelete(FilesDeleteRequestDto dto) {
+        if (dto.getFilter() != null) {
+            return repository.submitDelete(FileStorageService.toFilter(dto.getFilter()))
+                    .doOnNext(task -> {
+                        cache.invalidateAll();
+                        followDeleteTask(task);
+                    })
+                    .map(FileStorageService::deleteSubmittedResponse);
+        }
+        return inChunks(dto.getIds(), ids -> repository.bulkDelete(ids)
+                // Files before the failed item are deleted already, their contents go with them
+                .onErrorResume(e -> deleteAbsentContents(ids)
+                        .onErrorResume(cleanup -> {
+                            e.addSuppressed(cleanup);
+                            return Mono.empty();
+                        })
+                        .then(Mono.error(e)))
+                .flatMap(results -> deleteContents(results.keySet()).thenReturn(results)))
+                .map(FileStorageService::toDeleteResponse);
+    }
+
+    /**
+     * Deletes the contents of the files which are not stored any more, as those deleted by a filter,
+     * checking the ids of the contents with one request per file-storage.bulk.chunk-size of them.
+     * The directory is read on the bounded elastic scheduler. Sweep on start is run by {@link FileStorageService},
+     * which is created in the reactive mode as well.
+     */
+    public Mono<Integer> deleteOrphanContents() {
+        return Flux.using(contents::ids, Flux::fromStream, Stream::close)
+                .subscribeOn(Schedulers.boundedElastic())
+                .buffer(properties.getBulk().getChunkSize())
+                .concatMap(this::deleteAbsentContents)
+                .reduce(0, Integer::sum)
+                .doOnNext(deleted -> {
+                    if (deleted > 0) log.info("Deleted {} contents of files which are not stored", deleted);
+                });
+    }
+
+    private Mono<Integer> deleteAbsentContents(List<String> ids) {
+        return repository.findExistingIds(ids).flatMap(existing -> {
+            var absent = new ArrayList<>(ids);
+            absent.removeAll(existing);
+            return deleteContents(absent).thenReturn(absent.size());
+        });
+    }
+
+    // Task which is not found any more is complete as well
+    private void followDeleteTask(String taskId) {
+        Flux.interval(FileStorageService.TASK_POLL_INTERVAL)
+                .concatMap(tick -> repository.findTask(taskId).map(TaskStatus::isCompleted).defaultIfEmpty(true))
+                .filter(completed -> completed)
+                .next()
+                .doOnError(e -> log.warn("Delete task {} was not followed, contents of its files are deleted on the next start",
+                        taskId, e))
+                .onErrorResume(e -> Mono.empty())
+                .flatMap(completed -> sweep())
+                .subscribe();
+    }
+
+    private Mono<Integer> sweep() {
+        return deleteOrphanContents()
+                .doOnError(e -> log.warn("Contents of deleted files were not deleted", e))
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    public Mono<FilesDeleteResponseDto> getDeleteTask(String taskId) {
+        return findTask(taskId, FileRequests.DELETE_BY_QUERY_ACTION).map(FileStorageService::toDeleteResponse);
+    }
+
+    public Mono<Void> deleteTags(String id, List<String> tags) {
+        return repository.removeTags(id, tags).flatMap(result -> {
+            if (result == DocWriteResponse.Result.UPDATED) cache.invalidateAll();
+            if (result == DocWriteResponse.Result.NOT_FOUND) return Mono.error(new NotFoundException("File with such id is not exist"));
+
+            // Script leaves the file untouched if it has not all of the tags to delete
+            if (result == DocWriteResponse.Result.NOOP) return Mono.error(new NotFoundException("Tag not found on file"));
+            return Mono.empty();
+        });
+    }
+
+    public Mono<Void> assignTags(String id, List<String> tags) {
+        return repository.addTags(id, tags).flatMap(result -> {
+            if (result == DocWriteResponse.Result.UPDATED) cache.invalidateAll();
+            if (result == DocWriteResponse.Result.NOT_FOUND) return Mono.error(new NotFoundException("File with such id is not exist"));
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Adds the tags to the files given by id chunk by chunk, or submits a task for the files matching the filter.
+     */
+    public Mono<TagsUpdateResponseDto> bulkAssignTags(TagsUpdateRequestDto dto) {
+        if (dto.getFilter() != null) {
+            return submitted(repository.submitAddTags(FileStorageService.toFilter(dto.getFilter()), dto.getTags()));
+        }
+        return updateInChunks(dto.getIds(), ids -> repository.bulkAddTags(ids, dto.getTags()));
+    }
+
+    public Mono<TagsUpdateResponseDto> bulkDeleteTags(TagsUpdateRequestDto dto) {
+        if (dto.getFilter() != null) {
+            return submitted(repository.submitRemoveTags(FileStorageService.toFilter(dto.getFilter()), dto.getTags()));
+        }
+        return updateInChunks(dto.getIds(), ids -> repository.bulkRemoveTags(ids, dto.getTags()));
+    }
+
+    public Mono<TagsUpdateResponseDto> getTagsTask(String taskId) {
+        return findTask(taskId, FileRequests.UPDATE_BY_QUERY_ACTION).map(FileStorageService::toTagsResponse);
+    }
+
+    private Mono<TaskStatus> findTask(String taskId, String action) {
+        var status = FileStorageService.isTaskId(taskId) ? repository.findTask(taskId) : Mono.<TaskStatus>empty();
+        return status
+                .filter(task -> action.equals(task.getAction()))
+                .switchIfEmpty(Mono.error(new NotFoundException("There is no task with such id")))
+                .doOnNext(task -> {
+                    if (task.isCompleted()) cache.invalidateAll();
+                });
+    }
+
+    private Mono<TagsUpdateResponseDto> updateInChunks(
+            List<String> ids, Function<List<String>, Mono<Map<String, DocWriteResponse.Result>>> update) {
+        return inChunks(ids, update).map(FileStorageService::toTagsResponse);
+    }
+
+    private Mono<Map<String, DocWriteResponse.Result>> inChunks(
+            List<String> ids, Function<List<String>, Mono<Map<String, DocWriteResponse.Result>>> write) {
+        return Flux.fromIterable(ids)
+                .buffer(properties.getBulk().getChunkSize())
+                .concatMap(chunk -> write.apply(chunk).doOnNext(results -> cache.invalidateAll()))
+                .collect(LinkedHashMap<String, DocWriteResponse.Result>::new, Map::putAll);
+    }
+
+    private Mono<TagsUpdateResponseDto> submitted(Mono<String> taskId) {
+        return taskId.doOnNext(task -> cache.invalidateAll()).map(FileStorageService::submittedResponse);
+    }
+
+    public Mono<AllFilesResponseDto> getAll(AllFilesRequestDto dto) {
+        return cache.page(dto, Mono.defer(() -> search(dto)));
+    }
+
+    private Mono<AllFilesResponseDto> search(AllFilesRequestDto dto) {
+        var filter = FileStorageService.toFilter(dto);
+        var sort = FileStorageService.toSort(dto.getSort());
+        Mono<Page<File>> files;
+        if (dto.getCursor() == null) {
+            files = repository.findAllByFilter(filter, FileStorageService.toPageable(dto, sort, properties.getSearch()));
+        } else if (sort.isUnsorted()) {
+            files = repository.findAllByFilterAfter(filter, FileStorageService.decodeCursor(dto.getCursor()), dto.getSize());
+        } else {
+            files = repository.findAllByFilterAfter(filter, sort,
+                    FileStorageService.decodeCursor(dto.getCursor(), sort), dto.getSize());
+        }
+        return files.map(page -> FileStorageService.toResponse(page, dto.getSize(), sort));
+    }
+
+    /**
+     * Most frequent tags among the files matching the tags and query, cached for a short time per filter.
+     */
+    public Mono<List<TagCountDto>> countTags(TagsRequestDto dto) {
+        return cache.tagCounts(dto, Mono.defer(() -> repository
+                .countTags(FileStorageService.toFilter(dto.getQ(), dto.getTags()), dto.getSize())
+                .map(counts -> counts.entrySet()
+                        .stream()
+                        .map(count -> new TagCountDto(count.getKey(), count.getValue()))
+                        .collect(Collectors.toList()))));
+    }
+
+    /**
+     * Count of files matching the filter per range of interval bytes, lowest sizes first.
+     */
+    public Mono<List<SizeCountDto>> sizeHistogram(SizeHistogramRequestDto dto) {
+        return Mono.defer(() -> {
+            FileStorageService.checkBuckets(dto, properties.getSearch());
+            return repository.sizeHistogram(FileStorageService.toFilter(dto), dto.getInterval());
+        }).map(counts -> FileStorageService.toSizeCounts(counts, dto.getInterval()));
+    }
+
+    /**
+     * All files matching the tags and query of the listing, ignoring its pagination.
+     * Files are fetched batch by batch as fast as the client reads them.
+     */
+    public Flux<FileDto> export(AllFilesRequestDto dto) {
+        return repository.streamAllByFilter(FileStorageService.toFilter(dto),
+                properties.getSearch().getExportBatchSize())
+                .map(FileDto::fromEntity);
+    }
+}
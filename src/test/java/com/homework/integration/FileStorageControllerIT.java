@@ -1,29 +1,38 @@
 package com.homework.integration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.homework.config.ElasticsearchConfig;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.homework.controller.FileStorageController;
 import com.homework.dto.*;
+import com.homework.repository.FileContent;
 import com.homework.service.FileStorageService;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 @WebMvcTest(FileStorageController.class)
-@ContextConfiguration(classes = ElasticsearchConfig.class)
 public class FileStorageControllerIT {
 
     @Autowired
@@ -117,4 +126,143 @@ public class FileStorageControllerIT {
                 .andExpect(jsonPath("$.page[0].name").value(testName))
                 .andExpect(jsonPath("$.page[0].id").value(testID));
     }
+
+    @Test
+    void whenCountTags_thenReturnTagsWithCounts() throws Exception {
+        when(fileStorageService.countTags(ArgumentMatchers.any(TagsRequestDto.class)))
+                .thenReturn(List.of(new TagCountDto("document", 3), new TagCountDto("audio", 1)));
+
+        this.mockMvc
+                .perform(get("/file/tags").param("q", "report"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$[0].tag").value("document"))
+                .andExpect(jsonPath("$[0].count").value(3))
+                .andExpect(jsonPath("$[1].tag").value("audio"));
+    }
+
+    @Test
+    void whenExport_thenStreamFilePerLine() throws Exception {
+        var first = new FileDto(UUID.randomUUID().toString(), "first.txt", 1, List.of("document"));
+        var second = new FileDto(UUID.randomUUID().toString(), "second.mp3", 2, List.of("audio"));
+
+        when(fileStorageService.export(ArgumentMatchers.any(AllFilesRequestDto.class)))
+                .thenReturn(Stream.of(first, second));
+
+        var result = this.mockMvc
+                .perform(get("/file/_export").param("tags", "document"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(objectMapper.writeValueAsString(first) + "\n" +
+                        objectMapper.writeValueAsString(second) + "\n"));
+    }
+
+    @Test
+    void whenBulkUploadStream_thenReturnItemPerFile() throws Exception {
+        var testId = UUID.randomUUID().toString();
+        var body = objectMapper.writeValueAsString(new FileCreateDto("first.txt", 1, null)) + "\n\n" +
+                objectMapper.writeValueAsString(new FileCreateDto("second.txt", 2, null)) + "\n";
+
+        // Blank lines are skipped, the others are read by the service
+        when(fileStorageService.bulkUploadLines(ArgumentMatchers.<Iterator<String>>any(), ArgumentMatchers.any(ObjectReader.class)))
+                .thenAnswer(invocation -> {
+                    Iterator<String> lines = invocation.getArgument(0);
+                    ObjectReader reader = invocation.getArgument(1);
+                    var items = new ArrayList<BulkItemDto>();
+                    while (lines.hasNext()) {
+                        FileCreateDto dto = reader.readValue(lines.next());
+                        items.add(new BulkItemDto(dto.getName().equals("first.txt") ? testId : null, true, null));
+                    }
+                    return new BulkResponseDto(false, items);
+                });
+
+        this.mockMvc
+                .perform(post("/file/_bulk")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.errors").value(false))
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].id").value(testId));
+    }
+
+    @Test
+    void whenBulkUpload_thenReturnItemPerFile() throws Exception {
+        var testId = UUID.randomUUID().toString();
+        var dtos = List.of(new FileCreateDto("first.txt", 1, null));
+
+        when(fileStorageService.bulkUpload(ArgumentMatchers.<Iterator<FileCreateDto>>any()))
+                .thenReturn(new BulkResponseDto(false, List.of(new BulkItemDto(testId, true, null))));
+
+        this.mockMvc
+                .perform(post("/file/_bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dtos)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.errors").value(false))
+                .andExpect(jsonPath("$.items[0].id").value(testId))
+                .andExpect(jsonPath("$.items[0].success").value(true));
+    }
+
+    @Test
+    void whenAssignTagsByFilter_thenReturnAcceptedTask() throws Exception {
+        var dto = new TagsUpdateRequestDto(null, new FileFilterDto(List.of("audio"), null), List.of("sale"));
+
+        when(fileStorageService.bulkAssignTags(dto))
+                .thenReturn(new TagsUpdateResponseDto("node:1", false, 0, 0, 0, 0, null, null));
+
+        this.mockMvc
+                .perform(post("/file/_tags")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.task").value("node:1"))
+                .andExpect(jsonPath("$.completed").value(false));
+    }
+
+    @Test
+    void whenDeleteTagsWithIdsAndFilter_thenReturnErrorResponse() throws Exception {
+        var dto = new TagsUpdateRequestDto(List.of("a"), new FileFilterDto(), List.of("sale"));
+
+        this.mockMvc
+                .perform(delete("/file/_tags")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.error").isString());
+    }
+
+    @Test
+    void whenGetContentRange_thenReturnPartialContent(@TempDir Path directory) throws Exception {
+        var first = Files.writeString(directory.resolve("a"), "01234");
+        var second = Files.writeString(directory.resolve("b"), "56789");
+        var released = new AtomicBoolean();
+        var content = new FileContent("84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882", 10,
+                List.of(new FileContent.Chunk("a", first, 0, 5), new FileContent.Chunk("b", second, 5, 5)),
+                () -> released.set(true));
+
+        when(fileStorageService.getContent("a")).thenReturn(content);
+
+        var result = this.mockMvc
+                .perform(get("/file/{id}/content", "a").header(HttpHeaders.RANGE, "bytes=2-6"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc
+                .perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-6/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 5))
+                .andExpect(content().string("23456"));
+        assertTrue(released.get());
+    }
 }
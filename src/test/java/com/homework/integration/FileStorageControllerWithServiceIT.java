@@ -1,12 +1,16 @@
 package com.homework.integration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.homework.config.ElasticsearchConfig;
+import com.homework.config.FileStorageProperties;
 import com.homework.controller.FileStorageController;
 import com.homework.dto.FileCreateDto;
+import com.homework.extensions.FileTypeRegistry;
 import com.homework.model.File;
+import com.homework.repository.FileContentStore;
 import com.homework.repository.FileStorageRepo;
+import com.homework.service.FileQueryCache;
 import com.homework.service.FileStorageService;
+import org.elasticsearch.action.DocWriteResponse;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,9 +18,9 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
-import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.Mockito.when;
@@ -25,9 +29,8 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
-@ContextConfiguration(classes = ElasticsearchConfig.class)
 @WebMvcTest(FileStorageController.class)
-@Import(FileStorageService.class)
+@Import({FileStorageService.class, FileStorageProperties.class, FileContentStore.class, FileQueryCache.class, FileTypeRegistry.class})
 public class FileStorageControllerWithServiceIT {
     @Autowired
     private ObjectMapper objectMapper;
@@ -49,7 +52,7 @@ public class FileStorageControllerWithServiceIT {
                 .id(testId)
                 .name(testName)
                 .size(testSize)
-                .tags("image")
+                .tags(List.of("image"))
                 .build();
 
         when(repository.save(ArgumentMatchers.any(File.class))).thenReturn(mockFile);
@@ -70,6 +73,9 @@ public class FileStorageControllerWithServiceIT {
     @Test
     void whenDelete_thenReturnValidResponse() throws Exception {
         var testId = UUID.randomUUID().toString();
+
+        when(repository.deleteFile(testId)).thenReturn(DocWriteResponse.Result.NOT_FOUND);
+
         this.mockMvc
                 .perform(delete("/file/{id}", testId))
                 .andExpect(status().isNotFound())
@@ -82,6 +88,19 @@ public class FileStorageControllerWithServiceIT {
                 .andExpect(jsonPath("$.error").value("There is no file with such id"));
     }
 
+    @Test
+    void whenAssignTagsToMissingFile_thenReturnNotFound() throws Exception {
+        var testId = UUID.randomUUID().toString();
+        var tags = List.of("tag1", "tag2");
 
+        when(repository.addTags(testId, tags)).thenReturn(DocWriteResponse.Result.NOT_FOUND);
 
+        this.mockMvc
+                .perform(post("/file/{id}/tags", testId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(tags)))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.error").value("File with such id is not exist"));
+    }
 }
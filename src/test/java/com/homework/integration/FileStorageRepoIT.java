@@ -0,0 +1,116 @@
+package com.homework.integration;
+
+import com.homework.config.ElasticsearchConfig;
+import com.homework.config.FileStorageProperties;
+import com.homework.model.File;
+import com.homework.repository.FileStorageRepo;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicStatusLine;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Repository methods of Spring Data call the blocking client, so the overrides must take precedence over them
+@SpringJUnitConfig({ElasticsearchConfig.class, FileStorageProperties.class, FileStorageRepoIT.ClientConfig.class})
+public class FileStorageRepoIT {
+
+    private static final String SHARDS = "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}";
+
+    private static final RestClient LOW_LEVEL_CLIENT = mock(RestClient.class);
+
+    @Autowired
+    private FileStorageRepo repository;
+
+    private final List<String> requests = new ArrayList<>();
+
+    // Replaces the client of ElasticsearchConfig, which would connect to a node. Not annotated, as the component scan
+    // of the application would find it and replace the client in every context.
+    static class ClientConfig {
+        @Bean
+        @Primary
+        RestHighLevelClient testClient() {
+            return new TestClient(LOW_LEVEL_CLIENT);
+        }
+    }
+
+    static class TestClient extends RestHighLevelClient {
+        TestClient(RestClient client) {
+            super(client, RestClient::close, List.of());
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Only the calls of the test are checked, not those of the beans at startup
+        clearInvocations(LOW_LEVEL_CLIENT);
+        // Low level client answers as Elasticsearch and records the requests
+        doAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            ResponseListener listener = invocation.getArgument(1);
+            requests.add(request.getMethod() + " " + request.getEndpoint());
+            listener.onSuccess(response(request));
+            return null;
+        }).when(LOW_LEVEL_CLIENT).performRequestAsync(any(), any());
+    }
+
+    @Test
+    void whenSaveExistsAndDeleteById_thenWaitOnTheAsyncClient() throws Exception {
+        var file = new File("a", "a.txt", 1, null);
+
+        assertEquals(file, repository.save(file));
+        assertTrue(repository.existsById("a"));
+        repository.deleteById("a");
+
+        assertEquals(List.of(
+                "PUT /files/_doc/a", "POST /files/_refresh",
+                "HEAD /files/_doc/a",
+                "DELETE /files/_doc/a", "POST /files/_refresh"), requests);
+        verify(LOW_LEVEL_CLIENT, never()).performRequest(any());
+    }
+
+    private static Response response(Request request) {
+        var response = mock(Response.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        String body;
+        switch (request.getMethod()) {
+            case "PUT":
+                body = "{\"_index\":\"files\",\"_type\":\"_doc\",\"_id\":\"a\",\"_version\":1,\"result\":\"created\"," + SHARDS
+                        + ",\"_seq_no\":0,\"_primary_term\":1}";
+                break;
+            case "DELETE":
+                body = "{\"_index\":\"files\",\"_type\":\"_doc\",\"_id\":\"a\",\"_version\":2,\"result\":\"deleted\"," + SHARDS
+                        + ",\"_seq_no\":1,\"_primary_term\":1}";
+                break;
+            case "POST":
+                body = "{" + SHARDS + "}";
+                break;
+            default:
+                return response;
+        }
+        when(response.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+}
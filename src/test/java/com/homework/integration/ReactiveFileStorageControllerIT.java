@@ -0,0 +1,119 @@
+package com.homework.integration;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.homework.config.ReactiveWebConfig;
+import com.homework.controller.ReactiveFileStorageController;
+import com.homework.dto.BulkItemDto;
+import com.homework.dto.BulkResponseDto;
+import com.homework.dto.FileCreateDto;
+import com.homework.dto.FileDto;
+import com.homework.dto.IDDto;
+import com.homework.exceptions.NotFoundException;
+import com.homework.service.ReactiveFileStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveFileStorageController.class)
+@Import(ReactiveWebConfig.class)
+public class ReactiveFileStorageControllerIT {
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @MockBean
+    private ReactiveFileStorageService fileStorageService;
+
+    @Test
+    void whenUpload_thenReturnId() {
+        when(fileStorageService.upload(any(FileCreateDto.class))).thenReturn(Mono.just(new IDDto("id")));
+
+        webClient.post().uri("/file")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new FileCreateDto("a.mp3", 1, null))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.id").isEqualTo("id");
+    }
+
+    @Test
+    void whenUploadWithNegativeSize_thenReturnBadRequest() {
+        webClient.post().uri("/file")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new FileCreateDto("a.mp3", -1, null))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.success").isEqualTo(false);
+    }
+
+    @Test
+    void whenBulkUploadNdjson_thenEveryLineIsPassedToService() {
+        when(fileStorageService.bulkUploadLines(any(), any())).thenAnswer(invocation -> {
+            Flux<String> lines = invocation.getArgument(0);
+            ObjectReader reader = invocation.getArgument(1);
+            return lines.map(line -> {
+                        try {
+                            FileCreateDto dto = reader.readValue(line);
+                            return new BulkItemDto(dto.getName(), true, null);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collectList()
+                    .map(items -> new BulkResponseDto(false, items));
+        });
+
+        // Blank lines are skipped, the others are read by the service
+        webClient.post().uri("/file/_bulk")
+                .contentType(APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"a.mp3\",\"size\":1}\n\n{\"name\":\"b.png\",\"size\":2}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(2)
+                .jsonPath("$.items[1].id").isEqualTo("b.png");
+    }
+
+    @Test
+    void whenExport_thenFilesAreWrittenOnePerLine() {
+        when(fileStorageService.export(any())).thenReturn(Flux.just(
+                new FileDto("1", "a.mp3", 1, List.of("audio")),
+                new FileDto("2", "b.png", 2, List.of("image"))));
+
+        var body = webClient.get().uri("/file/_export?tags=audio")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertEquals(2, body.lines().count());
+    }
+
+    @Test
+    void whenDeleteMissingFile_thenReturnNotFound() {
+        when(fileStorageService.deleteById("id")).thenReturn(Mono.error(new NotFoundException("There is no file with such id")));
+
+        webClient.delete().uri("/file/id")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.error").isEqualTo("There is no file with such id");
+    }
+}
@@ -0,0 +1,112 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.extensions.ContentExtractor;
+import com.homework.model.File;
+import com.homework.repository.FileContentStore;
+import com.homework.repository.FileStorageRepo;
+import com.homework.service.FileQueryCache;
+import org.elasticsearch.action.DocWriteResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentExtractorTest {
+
+    @TempDir
+    Path directory;
+
+    private FileStorageRepo repository;
+
+    private FileStorageProperties properties;
+
+    private FileContentStore contents;
+
+    private FileQueryCache cache;
+
+    private ContentExtractor extractor;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(FileStorageRepo.class);
+        properties = new FileStorageProperties();
+        properties.getContent().setDirectory(directory);
+        contents = new FileContentStore(properties);
+        cache = mock(FileQueryCache.class);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (extractor != null) extractor.close();
+    }
+
+    @Test
+    void whenContentIsSubmitted_thenIndexItsTextAndType() throws Exception {
+        extractor = new ContentExtractor(repository, cache, properties);
+        var html = "<html><head><title>Annual report</title></head><body><p>Revenue grew</p></body></html>";
+        var content = contents.write("a", new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(extractor.submit("a", content));
+
+        var text = ArgumentCaptor.forClass(String.class);
+        var metadata = ArgumentCaptor.forClass(File.Metadata.class);
+        verify(repository, timeout(10_000)).updateExtracted(eq("a"), eq(content.getSha256()), text.capture(), metadata.capture());
+        assertTrue(text.getValue().contains("Revenue grew"));
+        assertEquals("text/html", metadata.getValue().getType());
+        assertEquals("Annual report", metadata.getValue().getTitle());
+        // Listings cached before the text was indexed would not find the file by it
+        verify(cache, timeout(10_000)).invalidateAll();
+    }
+
+    @Test
+    void whenTextIsLongerThanMaxLength_thenIndexItsBeginning() throws Exception {
+        properties.getExtract().setMaxLength(5);
+        extractor = new ContentExtractor(repository, cache, properties);
+        var content = contents.write("a", new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+
+        extractor.submit("a", content);
+
+        verify(repository, timeout(10_000)).updateExtracted(eq("a"), any(), eq("hello"), any());
+    }
+
+    @Test
+    void whenQueueIsFull_thenRejectContent() throws Exception {
+        properties.getExtract().setThreads(1);
+        properties.getExtract().setQueueCapacity(1);
+        extractor = new ContentExtractor(repository, cache, properties);
+        var content = contents.write("a", new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        var indexing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(repository.updateExtracted(any(), any(), any(), any())).thenAnswer(invocation -> {
+            indexing.countDown();
+            release.await();
+            return DocWriteResponse.Result.UPDATED;
+        });
+
+        // First content holds the only worker, the second one fills the queue
+        assertTrue(extractor.submit("a", content));
+        assertTrue(indexing.await(10, TimeUnit.SECONDS));
+        assertTrue(extractor.submit("b", content));
+        assertFalse(extractor.submit("c", content));
+        assertEquals(1, extractor.depth());
+        release.countDown();
+    }
+}
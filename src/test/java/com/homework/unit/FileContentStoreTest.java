@@ -0,0 +1,178 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.repository.FileContent;
+import com.homework.repository.FileContentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileContentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private FileStorageProperties properties;
+
+    private FileContentStore store;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FileStorageProperties();
+        properties.getContent().setDirectory(directory);
+        properties.getContent().setChunkSize(DataSize.ofBytes(1024));
+        store = new FileContentStore(properties);
+    }
+
+    @Test
+    void whenSameContentIsStoredTwice_thenKeepChunksUntilBothAreDeleted() throws Exception {
+        var bytes = randomBytes(64 * 1024, 1);
+
+        var first = store.write("a", new ByteArrayInputStream(bytes));
+        var second = store.write("b", new ByteArrayInputStream(bytes));
+
+        assertEquals(first.getSha256(), second.getSha256());
+        assertTrue(first.getChunks().size() > 1);
+        assertEquals(first.getChunks().size(), chunkFiles());
+
+        store.delete("a");
+        assertEquals(first.getChunks().size(), chunkFiles());
+        try (var content = store.find("b").orElseThrow()) {
+            assertArrayEquals(bytes, read(content));
+        }
+
+        store.delete("b");
+        assertEquals(0, chunkFiles());
+    }
+
+    @Test
+    void whenBytesAreInserted_thenOnlyChunksAroundThemChange() throws Exception {
+        var bytes = randomBytes(256 * 1024, 2);
+        var edited = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, edited, 0, 100 * 1024);
+        System.arraycopy(bytes, 100 * 1024, edited, 100 * 1024 + 10, bytes.length - 100 * 1024);
+
+        var original = store.write("a", new ByteArrayInputStream(bytes));
+        var changed = store.write("b", new ByteArrayInputStream(edited));
+
+        var originalChunks = original.getChunks().stream().map(FileContent.Chunk::getSha256).collect(Collectors.toSet());
+        var newChunks = new HashSet<>(changed.getChunks());
+        newChunks.removeIf(chunk -> originalChunks.contains(chunk.getSha256()));
+        assertTrue(newChunks.size() <= 2, "new chunks: " + newChunks.size());
+        assertArrayEquals(edited, read(changed));
+    }
+
+    @Test
+    void whenStoreIsOpenedAgain_thenCountReferencesAndDeleteUnusedChunks() throws Exception {
+        var bytes = randomBytes(16 * 1024, 3);
+        var content = store.write("a", new ByteArrayInputStream(bytes));
+        var orphan = directory.resolve("chunks").resolve("00").resolve("0".repeat(64));
+        Files.createDirectories(orphan.getParent());
+        Files.write(orphan, new byte[]{1});
+
+        store = new FileContentStore(properties);
+
+        assertEquals(content.getChunks().size(), chunkFiles());
+        var copy = store.copy("a", "b", content.getSha256()).orElseThrow();
+        store.delete("a");
+        assertArrayEquals(bytes, read(copy));
+    }
+
+    @Test
+    void whenContentIsSkipped_thenReadFromTheChunkHoldingThePosition() throws Exception {
+        var bytes = randomBytes(32 * 1024, 4);
+        var content = store.write("a", new ByteArrayInputStream(bytes));
+
+        try (var in = content.toResource().getInputStream()) {
+            assertEquals(20_000, in.skip(20_000));
+            assertArrayEquals(Arrays.copyOfRange(bytes, 20_000, 20_100), in.readNBytes(100));
+        }
+    }
+
+    @Test
+    void whenContentIsDeletedWhileRead_thenReadToTheEndAndDeleteChunksOnClose() throws Exception {
+        var bytes = randomBytes(64 * 1024, 5);
+        store.write("a", new ByteArrayInputStream(bytes));
+
+        var content = store.find("a").orElseThrow();
+        assertTrue(content.getChunks().size() > 2);
+        try (content; var in = content.toResource().getInputStream()) {
+            var half = in.readNBytes(bytes.length / 2);
+            store.delete("a");
+            store.write("a", new ByteArrayInputStream(randomBytes(64 * 1024, 6)));
+            store.delete("a");
+
+            assertTrue(store.find("a").isEmpty());
+            assertArrayEquals(Arrays.copyOfRange(bytes, 0, half.length), half);
+            assertArrayEquals(Arrays.copyOfRange(bytes, half.length, bytes.length), in.readAllBytes());
+            assertEquals(content.getChunks().size(), chunkFiles());
+        }
+        assertEquals(0, chunkFiles());
+    }
+
+    @Test
+    void whenSameContentIsWrittenAndDeletedConcurrently_thenKeepChunksOfTheFilesLeft() throws Exception {
+        var bytes = randomBytes(16 * 1024, 7);
+        var workers = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                var id = "f" + i;
+                tasks.add(workers.submit(() -> {
+                    for (int round = 0; round < 50; round++) {
+                        store.write(id, new ByteArrayInputStream(bytes));
+                        try (var content = store.find(id).orElseThrow()) {
+                            assertArrayEquals(bytes, read(content));
+                        }
+                        if (round < 49) store.delete(id);
+                    }
+                    return null;
+                }));
+            }
+            for (var task : tasks) task.get(30, TimeUnit.SECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        try (var content = store.find("f0").orElseThrow()) {
+            assertEquals(content.getChunks().stream().map(FileContent.Chunk::getSha256).distinct().count(), chunkFiles());
+        }
+        for (int i = 0; i < 8; i++) store.delete("f" + i);
+        assertEquals(0, chunkFiles());
+    }
+
+    private long chunkFiles() throws Exception {
+        try (var paths = Files.walk(directory.resolve("chunks"))) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static byte[] read(FileContent content) throws Exception {
+        try (var in = content.toResource().getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        var bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
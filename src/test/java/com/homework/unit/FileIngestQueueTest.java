@@ -0,0 +1,142 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.exceptions.IngestQueueFullException;
+import com.homework.model.File;
+import com.homework.repository.FileIngestQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicStatusLine;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileIngestQueueTest {
+
+    private FileStorageProperties properties;
+
+    private ElasticsearchOperations operations;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FileStorageProperties();
+        operations = mock(ElasticsearchOperations.class);
+        var converter = mock(ElasticsearchConverter.class);
+        when(operations.getIndexCoordinatesFor(File.class)).thenReturn(IndexCoordinates.of("files"));
+        when(operations.getElasticsearchConverter()).thenReturn(converter);
+        when(converter.mapObject(ArgumentMatchers.any())).thenReturn(Document.create());
+    }
+
+    @Test
+    void whenQueueIsFull_thenRejectUpload() throws Exception {
+        properties.getIngest().setQueueCapacity(1);
+
+        var queue = new FileIngestQueue(mock(RestHighLevelClient.class), operations, properties, RequestOptions.DEFAULT);
+
+        queue.enqueue(new File(UUID.randomUUID().toString(), "first", 1, null));
+
+        assertEquals(1, queue.depth());
+        assertThrows(IngestQueueFullException.class,
+                () -> queue.enqueue(new File(UUID.randomUUID().toString(), "second", 2, null)));
+    }
+
+    @Test
+    void whenBulksAreNotAnswered_thenRejectUploadsInsteadOfWaiting() {
+        properties.getIngest().setQueueCapacity(5);
+        properties.getIngest().setFlushActions(1);
+        properties.getIngest().setConcurrentRequests(1);
+
+        // Mocked client never completes a bulk, so the processor waits for the first one with the second full
+        var queue = new FileIngestQueue(mock(RestHighLevelClient.class), operations, properties, RequestOptions.DEFAULT);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 5; i++) queue.enqueue(new File(UUID.randomUUID().toString(), "file", 1, null));
+            assertThrows(IngestQueueFullException.class,
+                    () -> queue.enqueue(new File(UUID.randomUUID().toString(), "sixth", 1, null)));
+        });
+        assertEquals(5, queue.depth());
+    }
+
+    @Test
+    void whenItemIsRejectedWithTooManyRequests_thenRetryIt() throws Exception {
+        properties.getIngest().setFlushActions(1);
+        var statuses = List.of(429, 201);
+        var bulks = new AtomicInteger();
+        var registry = new SimpleMeterRegistry();
+
+        var queue = new FileIngestQueue(client(() -> statuses.get(bulks.getAndIncrement())), operations, properties,
+                RequestOptions.DEFAULT);
+        queue.bindTo(registry);
+        queue.enqueue(new File(UUID.randomUUID().toString(), "file", 1, null));
+        queue.close();
+
+        assertEquals(2, bulks.get());
+        assertEquals(0, queue.depth());
+        assertEquals(0, registry.counter("file.ingest.failed").count());
+    }
+
+    @Test
+    void whenItemFailsToBeIndexed_thenCountTheLostFile() throws Exception {
+        properties.getIngest().setFlushActions(1);
+        var registry = new SimpleMeterRegistry();
+
+        var queue = new FileIngestQueue(client(() -> 400), operations, properties, RequestOptions.DEFAULT);
+        queue.bindTo(registry);
+        queue.enqueue(new File(UUID.randomUUID().toString(), "file", 1, null));
+        queue.close();
+
+        assertEquals(0, queue.depth());
+        assertEquals(1, registry.counter("file.ingest.failed").count());
+    }
+
+    // bulkAsync is final, so the low level client answers the _bulk requests with one item of the given status
+    private static RestHighLevelClient client(IntSupplier status) throws Exception {
+        var lowLevelClient = mock(RestClient.class);
+        doAnswer(invocation -> {
+            ResponseListener listener = invocation.getArgument(1);
+            listener.onSuccess(bulkResponse(status.getAsInt()));
+            return null;
+        }).when(lowLevelClient).performRequestAsync(any(Request.class), any());
+        return new RestHighLevelClient(lowLevelClient, RestClient::close, List.of()) {
+        };
+    }
+
+    private static Response bulkResponse(int status) {
+        var item = status < 300
+                ? "\"result\":\"created\",\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,"
+                + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"status\":" + status
+                : "\"status\":" + status + ",\"error\":{\"type\":\"rejected\",\"reason\":\"rejected\"}";
+        var body = "{\"took\":1,\"errors\":" + (status >= 300) + ",\"items\":[{\"index\":"
+                + "{\"_index\":\"files\",\"_type\":\"_doc\",\"_id\":\"a\"," + item + "}}]}";
+        var response = mock(Response.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(response.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+}
@@ -1,36 +1,95 @@
 package com.homework.unit;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.homework.config.FileStorageProperties;
 import com.homework.dto.AllFilesRequestDto;
 import com.homework.dto.FileCreateDto;
 import com.homework.dto.FileDto;
+import com.homework.dto.FileFilterDto;
+import com.homework.dto.FilesDeleteRequestDto;
 import com.homework.dto.IDDto;
+import com.homework.dto.SizeCountDto;
+import com.homework.dto.SizeHistogramRequestDto;
+import com.homework.dto.TagCountDto;
+import com.homework.dto.TagsRequestDto;
+import com.homework.dto.TagsUpdateRequestDto;
+import com.homework.exceptions.InvalidCursorException;
+import com.homework.exceptions.InvalidSortException;
+import com.homework.exceptions.NotFoundException;
+import com.homework.exceptions.ResultWindowTooLargeException;
+import com.homework.exceptions.TooManyBucketsException;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.extensions.MimeTypeTagger;
 import com.homework.model.File;
+import com.homework.repository.FileContentStore;
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileIngestQueue;
+import com.homework.repository.FileRequests;
 import com.homework.repository.FileStorageRepo;
+import com.homework.repository.TaskStatus;
+import com.homework.service.FileQueryCache;
 import com.homework.service.FileStorageService;
 import org.junit.jupiter.api.BeforeEach;
+import org.elasticsearch.action.DocWriteResponse;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class FileStorageServiceTest {
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
     private FileStorageRepo repository;
 
+    private FileStorageProperties properties;
+
     private FileStorageService service;
 
     @BeforeEach
     void setUp() {
         this.repository = mock(FileStorageRepo.class);
-        service = new FileStorageService(repository);
+        this.properties = new FileStorageProperties();
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(), new FileContentStore(properties), Optional.empty());
     }
 
     @Test
@@ -40,7 +99,8 @@ public class FileStorageServiceTest {
         testFiles.add(new File(UUID.randomUUID().toString(), "first", 123, null));
         testFiles.add(new File(UUID.randomUUID().toString(), "second", 123, null));
 
-        when(repository.findAll(ArgumentMatchers.any(Pageable.class))).thenReturn(new PageImpl<>(testFiles));
+        when(repository.findAllByFilter(any(FileFilter.class), ArgumentMatchers.any(Pageable.class)))
+                .thenReturn(new PageImpl<>(testFiles));
         repository.saveAll(testFiles);
 
         var result = service.getAll(request);
@@ -48,4 +108,372 @@ public class FileStorageServiceTest {
         assertEquals(result.getPage().size(), testFiles.size());
     }
 
+    @Test
+    void whenGetAllByQueryAndTags_thenTotalIsTakenFromSearch() {
+        var request = new AllFilesRequestDto(List.of("audio"), 1, 0, "song");
+        var found = List.of(new File(UUID.randomUUID().toString(), "song.mp3", 123, List.of("audio")));
+        var filter = FileFilter.builder().query("song").tags(List.of("audio")).build();
+
+        when(repository.findAllByFilter(filter, PageRequest.of(0, 1)))
+                .thenReturn(new PageImpl<>(found, PageRequest.of(0, 1), 42));
+
+        var result = service.getAll(request);
+
+        assertEquals(42, result.getTotal());
+        assertEquals(1, result.getPage().size());
+        verify(repository, never()).count();
+    }
+
+    @Test
+    void whenGetAllWithCursor_thenContinueAfterLastId() {
+        var filter = FileFilter.builder().build();
+        var first = new File("a", "first.txt", 1, List.of("document"));
+        var second = new File("b", "second.txt", 2, List.of("document"));
+        when(repository.findAllByFilter(filter, PageRequest.of(0, 1)))
+                .thenReturn(new PageImpl<>(List.of(first), PageRequest.of(0, 1), 2));
+        when(repository.findAllByFilterAfter(filter, "a", 1))
+                .thenReturn(new PageImpl<>(List.of(second), PageRequest.of(0, 1), 2));
+        when(repository.findAllByFilterAfter(filter, "b", 1))
+                .thenReturn(new PageImpl<>(List.of(), PageRequest.of(0, 1), 2));
+
+        var firstPage = service.getAll(new AllFilesRequestDto(null, 1, 0, null));
+        var secondPage = service.getAll(new AllFilesRequestDto(null, 1, 0, null, firstPage.getCursor()));
+        var lastPage = service.getAll(new AllFilesRequestDto(null, 1, 0, null, secondPage.getCursor()));
+
+        assertEquals("a", firstPage.getPage().get(0).getId());
+        assertEquals("b", secondPage.getPage().get(0).getId());
+        assertTrue(lastPage.getPage().isEmpty());
+        assertEquals(null, lastPage.getCursor());
+    }
+
+    @Test
+    void whenGetAllSortedBySize_thenCursorContinuesAfterSizeAndId() {
+        var filter = FileFilter.builder().minSize(10L).build();
+        var sort = Sort.by(Sort.Direction.DESC, "size");
+        var largest = new File("b", "large.iso", 300, List.of());
+        var next = new File("a", "medium.iso", 200, List.of());
+        when(repository.findAllByFilter(filter, PageRequest.of(0, 1, sort)))
+                .thenReturn(new PageImpl<>(List.of(largest), PageRequest.of(0, 1, sort), 2));
+        when(repository.findAllByFilterAfter(eq(filter), eq(sort), aryEq(new Object[]{300L, "b"}), eq(1)))
+                .thenReturn(new PageImpl<>(List.of(next), PageRequest.of(0, 1, sort), 2));
+
+        var request = new AllFilesRequestDto(null, 1, 0, null, null, null, 10L, null, "size,desc");
+        var firstPage = service.getAll(request);
+        request.setCursor(firstPage.getCursor());
+        var secondPage = service.getAll(request);
+
+        assertEquals("b", firstPage.getPage().get(0).getId());
+        assertEquals("a", secondPage.getPage().get(0).getId());
+    }
+
+    @Test
+    void whenGetAllWithUnknownSort_thenThrowInvalidSort() {
+        var request = new AllFilesRequestDto(null, 10, 0, null, null, null, null, null, "name");
+
+        assertThrows(InvalidSortException.class, () -> service.getAll(request));
+        verify(repository, never()).findAllByFilter(any(FileFilter.class), any(Pageable.class));
+    }
+
+    @Test
+    void whenPageEndsPastResultWindow_thenRejectItBeforeSearching() {
+        var request = new AllFilesRequestDto(null, 1000, 10_000_000, null);
+        when(repository.findAllByFilter(any(FileFilter.class), any(Pageable.class))).thenReturn(new PageImpl<>(List.of()));
+
+        var e = assertThrows(ResultWindowTooLargeException.class, () -> service.getAll(request));
+        assertTrue(e.getMessage().contains("cursor"));
+        service.getAll(new AllFilesRequestDto(null, 1000, 9, null));
+        verify(repository, times(1)).findAllByFilter(any(FileFilter.class), any(Pageable.class));
+    }
+
+    @Test
+    void whenSizeHistogram_thenRangesStartAtBucketKeys() {
+        var filter = FileFilter.builder().tags(List.of("video")).maxSize(5000L).build();
+        var counts = new LinkedHashMap<Long, Long>();
+        counts.put(0L, 3L);
+        counts.put(2048L, 1L);
+        when(repository.sizeHistogram(filter, 1024)).thenReturn(counts);
+
+        var histogram = service.sizeHistogram(new SizeHistogramRequestDto(List.of("video"), null, null, 5000L, 1024));
+
+        assertEquals(List.of(new SizeCountDto(0, 1024, 3), new SizeCountDto(2048, 3072, 1)), histogram);
+    }
+
+    @Test
+    void whenSizeRangeHasMoreRangesThanMaxBuckets_thenRejectItBeforeAggregating() {
+        when(repository.sizeHistogram(any(FileFilter.class), anyLong())).thenReturn(new LinkedHashMap<>());
+
+        assertThrows(TooManyBucketsException.class, () -> service.sizeHistogram(
+                new SizeHistogramRequestDto(null, null, 0L, 10_000L * 1024, 1024)));
+        verify(repository, never()).sizeHistogram(any(FileFilter.class), anyLong());
+
+        service.sizeHistogram(new SizeHistogramRequestDto(null, null, 0L, 10_000L * 1024 - 1, 1024));
+        service.sizeHistogram(new SizeHistogramRequestDto(null, null, null, null, 1));
+        verify(repository, times(2)).sizeHistogram(any(FileFilter.class), anyLong());
+    }
+
+    @Test
+    void whenCountTagsTwice_thenAggregateOnce() {
+        var filter = FileFilter.builder().query("report").build();
+        var counts = new LinkedHashMap<String, Long>();
+        counts.put("document", 5L);
+        counts.put("draft", 2L);
+        when(repository.countTags(filter, 2)).thenReturn(counts);
+
+        var first = service.countTags(new TagsRequestDto(null, 2, "report"));
+        var second = service.countTags(new TagsRequestDto(null, 2, "report"));
+
+        assertEquals(List.of(new TagCountDto("document", 5), new TagCountDto("draft", 2)), first);
+        assertEquals(first, second);
+        verify(repository, times(1)).countTags(filter, 2);
+    }
+
+    @Test
+    void whenGetSamePageAfterTagsChanged_thenSearchAgain() throws NotFoundException {
+        var page = new PageImpl<>(List.of(new File("a", "first.txt", 1, List.of("document"))));
+        when(repository.findAllByFilter(any(FileFilter.class), any(Pageable.class))).thenReturn(page);
+        when(repository.addTags("a", List.of("draft"))).thenReturn(DocWriteResponse.Result.UPDATED);
+
+        service.getAll(new AllFilesRequestDto(List.of("document"), 10, 0, null));
+        service.getAll(new AllFilesRequestDto(List.of("document"), 10, 0, null));
+        verify(repository, times(1)).findAllByFilter(any(FileFilter.class), any(Pageable.class));
+
+        service.assignTags("a", List.of("draft"));
+        service.getAll(new AllFilesRequestDto(List.of("document"), 10, 0, null));
+        verify(repository, times(2)).findAllByFilter(any(FileFilter.class), any(Pageable.class));
+    }
+
+    @Test
+    void whenSearchOfCachedPageFails_thenNextRequestSearchesAgain() {
+        var page = new PageImpl<>(List.of(new File("a", "first.txt", 1, List.of("document"))));
+        when(repository.findAllByFilter(any(FileFilter.class), any(Pageable.class)))
+                .thenThrow(new DataAccessResourceFailureException("timeout"))
+                .thenReturn(page);
+        var request = new AllFilesRequestDto(null, 10, 0, null);
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.getAll(request));
+        assertEquals(1, service.getAll(request).getPage().size());
+        assertEquals(1, service.getAll(request).getPage().size());
+        verify(repository, times(2)).findAllByFilter(any(FileFilter.class), any(Pageable.class));
+    }
+
+    @Test
+    void whenGetAllWithBrokenCursor_thenThrowInvalidCursor() {
+        var request = new AllFilesRequestDto(null, 1, 0, null, "not a cursor");
+
+        assertThrows(InvalidCursorException.class, () -> service.getAll(request));
+    }
+
+    @Test
+    void whenBulkUpload_thenSaveInChunksAndReportEveryItem() {
+        properties.getBulk().setChunkSize(2);
+        var dtos = List.of(
+                new FileCreateDto("first.mp3", 1, null),
+                new FileCreateDto("", -2, null),
+                new FileCreateDto("second.txt", 3, null),
+                new FileCreateDto("third", 4, null));
+
+        when(repository.bulkSave(anyList())).thenReturn(Map.of());
+
+        var result = service.bulkUpload(dtos.iterator());
+
+        verify(repository, times(2)).bulkSave(anyList());
+        assertEquals(dtos.size(), result.getItems().size());
+        assertTrue(result.isErrors());
+        assertFalse(result.getItems().get(1).isSuccess());
+        assertTrue(result.getItems().get(2).isSuccess());
+    }
+
+    @Test
+    void whenBulkUploadLineIsMalformed_thenReportItInItsPlaceAndSaveTheOthers() {
+        properties.getBulk().setChunkSize(1);
+        var lines = List.of("{\"name\":\"first.mp3\",\"size\":1}", "{\"name\": oops}", "{\"name\":\"third\",\"size\":3}");
+
+        when(repository.bulkSave(anyList())).thenReturn(Map.of());
+
+        var result = service.bulkUploadLines(lines.iterator(), new ObjectMapper().registerModule(new ParameterNamesModule()).readerFor(FileCreateDto.class));
+
+        verify(repository, times(2)).bulkSave(anyList());
+        assertEquals(3, result.getItems().size());
+        assertTrue(result.isErrors());
+        assertTrue(result.getItems().get(0).isSuccess());
+        assertFalse(result.getItems().get(1).isSuccess());
+        assertTrue(result.getItems().get(1).getError().startsWith("Line is not a file"));
+        assertTrue(result.getItems().get(2).isSuccess());
+    }
+
+    @Test
+    void whenUploadInAsyncMode_thenEnqueueWithoutSave() {
+        var ingestQueue = mock(FileIngestQueue.class);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.of(ingestQueue),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(), new FileContentStore(properties), Optional.empty());
+
+        var result = service.upload(new FileCreateDto("first.mp3", 1, null));
+
+        verify(ingestQueue).enqueue(any(File.class));
+        verify(repository, never()).save(any(File.class));
+        assertNotNull(result.getId());
+    }
+
+    @Test
+    void whenUploadWithMimeTags_thenMergeWithTypeTag() {
+        properties.getMime().setEnabled(true);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties),
+                Optional.of(new MimeTypeTagger(properties)), new FileContentStore(properties), Optional.empty());
+        when(repository.save(any(File.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        var saved = ArgumentCaptor.forClass(File.class);
+
+        service.upload(new FileCreateDto("notes.txt", 1, null));
+        service.upload(new FileCreateDto("song.MP3", 1, List.of("music")));
+
+        verify(repository, times(2)).save(saved.capture());
+        assertEquals(List.of("document", "text"), saved.getAllValues().get(0).getTags());
+        assertEquals(List.of("music", "audio"), saved.getAllValues().get(1).getTags());
+    }
+
+    @Test
+    void whenDeleteMissingTags_thenThrowNotFound() {
+        var testId = UUID.randomUUID().toString();
+        var tags = List.of("tag1");
+
+        when(repository.removeTags(testId, tags)).thenReturn(DocWriteResponse.Result.NOOP);
+
+        var exception = assertThrows(NotFoundException.class, () -> service.deleteTags(testId, tags));
+        assertEquals("Tag not found on file", exception.getMessage());
+    }
+
+    @Test
+    void whenAssignTagsByIds_thenUpdateInChunksAndReportMissing() {
+        properties.getBulk().setChunkSize(2);
+        var tags = List.of("sale");
+        when(repository.bulkAddTags(List.of("a", "b"), tags))
+                .thenReturn(Map.of("a", DocWriteResponse.Result.UPDATED, "b", DocWriteResponse.Result.NOOP));
+        when(repository.bulkAddTags(List.of("c"), tags))
+                .thenReturn(Map.of("c", DocWriteResponse.Result.NOT_FOUND));
+
+        var result = service.bulkAssignTags(new TagsUpdateRequestDto(List.of("a", "b", "c"), null, tags));
+
+        verify(repository, times(2)).bulkAddTags(anyList(), ArgumentMatchers.eq(tags));
+        assertTrue(result.isCompleted());
+        assertEquals(3, result.getTotal());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getNoops());
+        assertEquals(List.of("c"), result.getMissing());
+    }
+
+    @Test
+    void whenDeleteTagsByFilter_thenSubmitTaskAndFollowIt() throws NotFoundException {
+        var filter = FileFilter.builder().query("report").nameOnly(true).tags(List.of("document")).build();
+        when(repository.submitRemoveTags(filter, List.of("draft"))).thenReturn("node:7");
+        when(repository.findTask("node:7")).thenReturn(Optional.of(TaskStatus.builder()
+                .id("node:7").action(FileRequests.UPDATE_BY_QUERY_ACTION).completed(true).total(5).updated(4).versionConflicts(1).failures(List.of()).build()));
+
+        var submitted = service.bulkDeleteTags(new TagsUpdateRequestDto(null,
+                new FileFilterDto(List.of("document"), "report"), List.of("draft")));
+        var status = service.getTagsTask("node:7");
+
+        assertEquals("node:7", submitted.getTask());
+        assertFalse(submitted.isCompleted());
+        assertTrue(status.isCompleted());
+        assertEquals(4, status.getUpdated());
+        assertEquals(1, status.getConflicts());
+        assertThrows(NotFoundException.class, () -> service.getTagsTask("not a task"));
+        verify(repository, never()).findTask("not a task");
+    }
+
+    @Test
+    void whenDeleteMissingFile_thenThrowNotFoundWithOneRequest() {
+        when(repository.deleteFile("a")).thenReturn(DocWriteResponse.Result.NOT_FOUND);
+
+        assertThrows(NotFoundException.class, () -> service.deleteById("a"));
+        verify(repository, never()).existsById(any());
+    }
+
+    @Test
+    void whenDeleteTaskIsReadAsTagsTask_thenThrowNotFound() throws NotFoundException {
+        var status = TaskStatus.builder().id("node:3").action(FileRequests.DELETE_BY_QUERY_ACTION)
+                .completed(true).total(2).deleted(2).failures(List.of()).build();
+        when(repository.findTask("node:3")).thenReturn(Optional.of(status));
+
+        assertEquals(2, service.getDeleteTask("node:3").getDeleted());
+        assertThrows(NotFoundException.class, () -> service.getTagsTask("node:3"));
+    }
+
+    @Test
+    void whenPutContent_thenStoreItAndSetSizeToItsLength(@TempDir Path directory) throws Exception {
+        properties.getContent().setDirectory(directory);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(),
+                new FileContentStore(properties), Optional.empty());
+        when(repository.existsById("a")).thenReturn(true);
+        when(repository.updateContent("a", 5, HELLO_SHA256)).thenReturn(DocWriteResponse.Result.UPDATED);
+
+        service.putContent("a", new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+
+        verify(repository).updateContent("a", 5, HELLO_SHA256);
+        try (var content = service.getContent("a").toResource().getInputStream()) {
+            assertEquals("hello", new String(content.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertThrows(NotFoundException.class, () -> service.getContent("b"));
+    }
+
+    @Test
+    void whenCopyContentByHash_thenStoreContentOfTheFileWithIt(@TempDir Path directory) throws Exception {
+        properties.getContent().setDirectory(directory);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(),
+                new FileContentStore(properties), Optional.empty());
+        when(repository.existsById(any())).thenReturn(true);
+        when(repository.updateContent(any(), ArgumentMatchers.anyLong(), any())).thenReturn(DocWriteResponse.Result.UPDATED);
+        service.putContent("a", new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+
+        var filter = FileFilter.builder().contentHash(HELLO_SHA256).build();
+        when(repository.findAllByFilter(filter, PageRequest.of(0, 1)))
+                .thenReturn(new PageImpl<>(List.of(new File("a", "hello.txt", 5, null, HELLO_SHA256))));
+        when(repository.findAllByFilter(FileFilter.builder().contentHash("0".repeat(64)).build(), PageRequest.of(0, 1)))
+                .thenReturn(Page.empty());
+
+        service.copyContent("b", HELLO_SHA256.toUpperCase());
+
+        verify(repository).updateContent("b", 5, HELLO_SHA256);
+        assertEquals(HELLO_SHA256, service.getContent("b").getSha256());
+        assertThrows(NotFoundException.class, () -> service.copyContent("c", "0".repeat(64)));
+    }
+
+    @Test
+    void whenFilesAreGoneOrBulkDeleteFails_thenDeleteTheirContents(@TempDir Path directory) throws Exception {
+        properties.getContent().setDirectory(directory);
+        properties.getBulk().setChunkSize(2);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new FileStorageService(repository, properties, validator, Optional.empty(),
+                new FileQueryCache(properties), new FileTypeRegistry(properties), Optional.empty(),
+                new FileContentStore(properties), Optional.empty());
+        when(repository.existsById(any())).thenReturn(true);
+        when(repository.updateContent(any(), ArgumentMatchers.anyLong(), any())).thenReturn(DocWriteResponse.Result.UPDATED);
+        for (var id : List.of("a", "b", "c", "d", "e")) {
+            service.putContent(id, new ByteArrayInputStream(id.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // Files b and d were deleted by a filter
+        when(repository.findExistingIds(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> !id.equals("b") && !id.equals("d")).collect(Collectors.toSet());
+        });
+        assertEquals(2, service.deleteOrphanContents());
+        assertThrows(NotFoundException.class, () -> service.getContent("b"));
+        assertThrows(NotFoundException.class, () -> service.getContent("d"));
+
+        // Bulk delete of a and c failed after deleting a
+        when(repository.bulkDelete(List.of("a", "c"))).thenThrow(new DataAccessResourceFailureException("c was not deleted"));
+        when(repository.findExistingIds(List.of("a", "c"))).thenReturn(Set.of("c"));
+        var request = new FilesDeleteRequestDto(List.of("a", "c"), null);
+        assertThrows(DataAccessResourceFailureException.class, () -> service.bulkDelete(request));
+        assertThrows(NotFoundException.class, () -> service.getContent("a"));
+        service.getContent("c").close();
+        service.getContent("e").close();
+    }
 }
@@ -0,0 +1,47 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.extensions.FileTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FileTypeRegistryTest {
+
+    @Test
+    void whenBuiltInExtension_thenClassifyIgnoringCase() {
+        var registry = new FileTypeRegistry(new FileStorageProperties());
+
+        assertEquals("audio", registry.classify("song.mp3"));
+        assertEquals("document", registry.classify("Quarterly Report.2020.PDF"));
+        assertEquals("video", registry.classify("clip.MkV"));
+        assertEquals("image", registry.classify(".png"));
+    }
+
+    @Test
+    void whenNoKnownExtension_thenReturnNull() {
+        var registry = new FileTypeRegistry(new FileStorageProperties());
+
+        assertNull(registry.classify("README"));
+        assertNull(registry.classify("archive."));
+        assertNull(registry.classify("archive.zip"));
+        assertNull(registry.classify("song.mp3.part"));
+        assertNull(registry.classify(null));
+    }
+
+    @Test
+    void whenConfiguredExtension_thenClassifyAsConfiguredType() {
+        var properties = new FileStorageProperties();
+        properties.getExtensions().put("archive", List.of("zip", "TAR"));
+        properties.getExtensions().put("data", List.of("txt"));
+        var registry = new FileTypeRegistry(properties);
+
+        assertEquals("archive", registry.classify("backup.tar"));
+        assertEquals("archive", registry.classify("backup.ZIP"));
+        assertEquals("data", registry.classify("notes.txt"));
+        assertEquals("audio", registry.classify("song.wav"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.model.File;
+import com.homework.repository.FileFilter;
+import com.homework.repository.TaskStatus;
+import com.homework.repository.lucene.LuceneFileStore;
+import org.elasticsearch.action.DocWriteResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LuceneFileStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private FileStorageProperties properties;
+
+    private LuceneFileStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties = new FileStorageProperties();
+        properties.getLucene().setDirectory(directory);
+        store = new LuceneFileStore(properties);
+        store.bulkSave(List.of(
+                new File("a", "Quarterly Report.pdf", 300, List.of("document", "work")),
+                new File("b", "report-draft.txt", 100, List.of("document")),
+                new File("c", "IMG_01.jpg", 200, List.of("image")),
+                new File("d", "x.md", 50, null)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void whenQueryIsPartOfName_thenFindFilesIgnoringCase() {
+        assertEquals(List.of("a", "b"), ids(FileFilter.builder().query("REPORT").build()));
+        assertEquals(List.of("c"), ids(FileFilter.builder().query("g_0").build()));
+        // Shorter than a trigram
+        assertEquals(List.of("d"), ids(FileFilter.builder().query("X.").build()));
+        assertEquals(List.of(), ids(FileFilter.builder().query("report draft").build()));
+    }
+
+    @Test
+    void whenTagsAreGiven_thenFindFilesWithAllOfThem() {
+        assertEquals(List.of("a", "b"), ids(FileFilter.builder().tags(List.of("document")).build()));
+        assertEquals(List.of("a"), ids(FileFilter.builder().tags(List.of("document", "work")).build()));
+        assertEquals(List.of("b", "c"), ids(FileFilter.builder().minSize(100L).maxSize(200L).build()));
+    }
+
+    @Test
+    void whenTagsAreChanged_thenReturnResultsAsElasticsearch() {
+        assertEquals(DocWriteResponse.Result.UPDATED, store.addTags("d", List.of("text")));
+        assertEquals(DocWriteResponse.Result.NOOP, store.addTags("d", List.of("text")));
+        assertEquals(DocWriteResponse.Result.NOT_FOUND, store.addTags("z", List.of("text")));
+        assertEquals(DocWriteResponse.Result.NOOP, store.removeTags("a", List.of("work", "image")));
+        assertEquals(DocWriteResponse.Result.UPDATED, store.removeTags("a", List.of("work")));
+
+        assertEquals(List.of("d"), ids(FileFilter.builder().tags(List.of("text")).build()));
+        assertEquals(Map.of("document", 2L, "image", 1L, "text", 1L), store.countTags(FileFilter.builder().build(), 10));
+        assertEquals(List.of("document", "image"),
+                List.copyOf(store.countTags(FileFilter.builder().build(), 2).keySet()));
+    }
+
+    @Test
+    void whenSortedBySize_thenContinueAfterSortValues() {
+        var sort = Sort.by(Sort.Direction.DESC, "size");
+        var first = store.findAllByFilter(FileFilter.builder().build(), PageRequest.of(0, 2, sort));
+        assertEquals(List.of("a", "c"), first.map(File::getId).getContent());
+        assertEquals(4, first.getTotalElements());
+
+        var next = store.findAllByFilterAfter(FileFilter.builder().build(), sort, new Object[]{200L, "c"}, 2);
+        assertEquals(List.of("b", "d"), next.map(File::getId).getContent());
+        assertEquals(List.of("c", "d"), store.findAllByFilterAfter(FileFilter.builder().build(), "b", 2)
+                .map(File::getId).getContent());
+        assertEquals(List.of(0L, 200L), List.copyOf(store.sizeHistogram(FileFilter.builder().build(), 200).keySet()));
+        assertEquals(Map.of(0L, 2L, 200L, 2L), store.sizeHistogram(FileFilter.builder().build(), 200));
+    }
+
+    @Test
+    void whenTagsAreAddedByFilter_thenTaskCompletesWithCounts() throws Exception {
+        var taskId = store.submitAddTags(FileFilter.builder().query("report").build(), List.of("work"));
+
+        var status = store.findTask(taskId).orElseThrow();
+        for (int i = 0; i < 100 && !status.isCompleted(); i++) {
+            Thread.sleep(10);
+            status = store.findTask(taskId).orElseThrow();
+        }
+        assertTrue(status.isCompleted());
+        assertEquals(1, status.getTotal());
+        assertEquals(1, status.getUpdated());
+        assertEquals(List.of("a", "b"), ids(FileFilter.builder().tags(List.of("work")).build()));
+        assertFalse(store.findTask("lucene:0").isPresent());
+    }
+
+    @Test
+    void whenMoreFilesThanOneBatchAreDeletedByFilter_thenDeleteThemAll() throws Exception {
+        var files = new ArrayList<File>();
+        for (int i = 0; i < 2500; i++) files.add(new File(String.format("f%04d", i), "bulk.txt", 1, List.of("bulk")));
+        store.bulkSave(files);
+
+        var status = await(store.submitAddTags(FileFilter.builder().tags(List.of("bulk")).build(), List.of("seen")));
+        assertEquals(2500, status.getTotal());
+        assertEquals(2500, status.getUpdated());
+
+        status = await(store.submitDelete(FileFilter.builder().build()));
+        assertEquals(2504, status.getTotal());
+        assertEquals(2504, status.getDeleted());
+        assertEquals(List.of(), ids(FileFilter.builder().build()));
+    }
+
+    @Test
+    void whenStoreIsOpenedAgain_thenKeepFilesAndTheirText() throws Exception {
+        store.updateContent("b", 120, "hash");
+        assertEquals(DocWriteResponse.Result.UPDATED, store.updateExtracted("b", "hash", "quarterly numbers", null));
+        assertEquals(DocWriteResponse.Result.NOOP, store.updateExtracted("b", "other", "stale text", null));
+        assertEquals(DocWriteResponse.Result.DELETED, store.deleteFile("c"));
+        store.close();
+
+        store = new LuceneFileStore(properties);
+        assertEquals(List.of("a", "b"), ids(FileFilter.builder().query("quarterly").build()));
+        // Filters of the bulk endpoints match names only
+        assertEquals(List.of("a"), ids(FileFilter.builder().query("quarterly").nameOnly(true).build()));
+        assertEquals(List.of("a", "b", "d"), store.streamAllByFilter(FileFilter.builder().build(), 2)
+                .map(File::getId).collect(Collectors.toList()));
+        // Text is searched but left out of listings
+        assertNull(store.findAllByFilter(FileFilter.builder().contentHash("hash").build(), PageRequest.of(0, 10))
+                .getContent().get(0).getContent());
+    }
+
+    private TaskStatus await(String taskId) throws InterruptedException {
+        var status = store.findTask(taskId).orElseThrow();
+        for (int i = 0; i < 1000 && !status.isCompleted(); i++) {
+            Thread.sleep(10);
+            status = store.findTask(taskId).orElseThrow();
+        }
+        assertTrue(status.isCompleted());
+        assertEquals(List.of(), status.getFailures());
+        return status;
+    }
+
+    private List<String> ids(FileFilter filter) {
+        return store.findAllByFilter(filter, PageRequest.of(0, 10)).map(File::getId).getContent();
+    }
+}
@@ -0,0 +1,158 @@
+package com.homework.unit;
+
+import com.homework.config.FileStorageProperties;
+import com.homework.dto.AllFilesRequestDto;
+import com.homework.dto.FileCreateDto;
+import com.homework.exceptions.InvalidCursorException;
+import com.homework.exceptions.NotFoundException;
+import com.homework.extensions.FileTypeRegistry;
+import com.homework.model.File;
+import com.homework.repository.FileContentStore;
+import com.homework.repository.FileFilter;
+import com.homework.repository.reactive.ReactiveFileStorageRepo;
+import com.homework.service.FileQueryCache;
+import com.homework.service.ReactiveFileStorageService;
+import org.elasticsearch.action.DocWriteResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import javax.validation.Validation;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReactiveFileStorageServiceTest {
+    private ReactiveFileStorageRepo repository;
+
+    private FileStorageProperties properties;
+
+    private FileQueryCache cache;
+
+    private ReactiveFileStorageService service;
+
+    @BeforeEach
+    void setUp() {
+        this.repository = mock(ReactiveFileStorageRepo.class);
+        this.properties = new FileStorageProperties();
+        this.cache = new FileQueryCache(properties);
+        var validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service = new ReactiveFileStorageService(repository, properties, validator, Optional.empty(),
+                cache, new FileTypeRegistry(properties), Optional.empty(), new FileContentStore(properties), Optional.empty());
+    }
+
+    @Test
+    void whenBulkUpload_thenFilesAreSavedChunkByChunkInOrder() {
+        properties.getBulk().setChunkSize(2);
+        when(repository.bulkSave(anyList())).thenReturn(Mono.just(Map.of()));
+
+        var dtos = Flux.just(
+                new FileCreateDto("a.mp3", 1, null),
+                new FileCreateDto("invalid", -1, null),
+                new FileCreateDto("b.png", 2, null),
+                new FileCreateDto("c.txt", 3, null));
+        var result = service.bulkUpload(dtos).block();
+
+        assertNotNull(result);
+        assertTrue(result.isErrors());
+        assertEquals(4, result.getItems().size());
+        assertFalse(result.getItems().get(1).isSuccess());
+        assertNull(result.getItems().get(1).getId());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<File>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).bulkSave(chunks.capture());
+        assertEquals("a.mp3", chunks.getAllValues().get(0).get(0).getName());
+        assertEquals("b.png", chunks.getAllValues().get(0).get(1).getName());
+        assertEquals("c.txt", chunks.getAllValues().get(1).get(0).getName());
+    }
+
+    @Test
+    void whenGetAllPageIsFull_thenCursorContinuesAfterLastId() {
+        var request = new AllFilesRequestDto(null, 1, 0, null);
+        var file = new File("id-1", "a.mp3", 1, List.of("audio"));
+        when(repository.findAllByFilter(any(FileFilter.class), any()))
+                .thenReturn(Mono.just(new PageImpl<>(List.of(file), PageRequest.of(0, 1), 5)));
+        when(repository.findAllByFilterAfter(any(FileFilter.class), any(), anyInt()))
+                .thenReturn(Mono.just(new PageImpl<>(List.of(), PageRequest.of(0, 1), 5)));
+
+        var first = service.getAll(request).block();
+        assertNotNull(first);
+        assertEquals(5, first.getTotal());
+        assertNotNull(first.getCursor());
+
+        var next = service.getAll(new AllFilesRequestDto(null, 1, 0, null, first.getCursor())).block();
+        assertNotNull(next);
+        verify(repository).findAllByFilterAfter(any(FileFilter.class), eq("id-1"), eq(1));
+        assertNull(next.getCursor());
+    }
+
+    @Test
+    void whenGetAllWithInvalidCursor_thenErrorIsSignalled() {
+        var request = new AllFilesRequestDto(null, 1, 0, null, "not base64!");
+
+        var result = service.getAll(request);
+
+        assertThrows(InvalidCursorException.class, result::block);
+    }
+
+    @Test
+    void whenSamePageIsRequestedTwice_thenSearchRunsOnce() {
+        var request = new AllFilesRequestDto(null, 10, 0, null);
+        when(repository.findAllByFilter(any(FileFilter.class), any()))
+                .thenReturn(Mono.just(new PageImpl<>(List.of())));
+
+        service.getAll(request).block();
+        service.getAll(request).block();
+
+        verify(repository, times(1)).findAllByFilter(any(FileFilter.class), any());
+    }
+
+    @Test
+    void whenCacheIsClearedWhileSearching_thenSearchAgain() {
+        var request = new AllFilesRequestDto(null, 10, 0, null);
+        var searching = MonoProcessor.<Page<File>>create();
+        when(repository.findAllByFilter(any(FileFilter.class), any()))
+                .thenReturn(searching, Mono.just(new PageImpl<>(List.of())));
+
+        var stale = service.getAll(request).toFuture();
+        cache.invalidateAll();
+        searching.onNext(new PageImpl<>(List.of(new File("id-1", "a.mp3", 1, null))));
+
+        assertEquals(1, stale.join().getTotal());
+        assertEquals(0, service.getAll(request).block().getTotal());
+        verify(repository, times(2)).findAllByFilter(any(FileFilter.class), any());
+    }
+
+    @Test
+    void whenDeleteTagsOfMissingFile_thenNotFoundIsSignalled() {
+        when(repository.removeTags("id", List.of("red"))).thenReturn(Mono.just(DocWriteResponse.Result.NOT_FOUND));
+        when(repository.removeTags("id", List.of("blue"))).thenReturn(Mono.just(DocWriteResponse.Result.NOOP));
+        when(repository.removeTags("id", List.of("green"))).thenReturn(Mono.just(DocWriteResponse.Result.UPDATED));
+
+        assertThrows(NotFoundException.class, () -> service.deleteTags("id", List.of("red")).block());
+        assertThrows(NotFoundException.class, () -> service.deleteTags("id", List.of("blue")).block());
+        service.deleteTags("id", List.of("green")).block();
+    }
+}
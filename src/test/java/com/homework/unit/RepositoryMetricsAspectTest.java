@@ -0,0 +1,45 @@
+package com.homework.unit;
+
+import com.homework.repository.FileFilter;
+import com.homework.repository.FileStorageRepo;
+import com.homework.repository.RepositoryMetricsAspect;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RepositoryMetricsAspectTest {
+
+    @Test
+    void whenRepositoryCalled_thenTimePerMethodAndException() {
+        var registry = new SimpleMeterRegistry();
+        var aspect = new RepositoryMetricsAspect();
+        aspect.bindTo(registry);
+
+        var target = mock(FileStorageRepo.class);
+        when(target.existsById(any())).thenReturn(true);
+        when(target.findAllByFilter(any(), any())).thenThrow(new DataAccessResourceFailureException("down"));
+
+        var factory = new AspectJProxyFactory(target);
+        factory.addInterface(FileStorageRepo.class);
+        factory.addAspect(aspect);
+        FileStorageRepo repository = factory.getProxy();
+
+        repository.existsById("a");
+        repository.existsById("b");
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> repository.findAllByFilter(FileFilter.builder().build(), PageRequest.of(0, 10)));
+
+        assertEquals(2, registry.get("file.repository")
+                .tags("method", "existsById", "exception", "None").timer().count());
+        assertEquals(1, registry.get("file.repository")
+                .tags("method", "findAllByFilter", "exception", "DataAccessResourceFailureException").timer().count());
+    }
+}
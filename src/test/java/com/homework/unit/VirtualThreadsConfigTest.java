@@ -0,0 +1,74 @@
+package com.homework.unit;
+
+import com.homework.config.VirtualThreadsConfig;
+import org.apache.catalina.connector.Connector;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadsConfigTest {
+
+    private final WebApplicationContextRunner runner = new WebApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadsConfig.class);
+
+    @Test
+    void whenPropertyIsNotSet_thenKeepThePlatformThreads() {
+        runner.run(context -> assertFalse(context.containsBean("virtualThreadExecutor")));
+    }
+
+    @Test
+    void whenEnabledBeforeJava21_thenFailToStartWithTheJavaVersion() {
+        assumeTrue(Runtime.version().feature() < 21);
+
+        runner.withPropertyValues("file-storage.virtual-threads.enabled=true").run(context -> {
+            assertNotNull(context.getStartupFailure());
+            var cause = context.getStartupFailure();
+            while (cause.getCause() != null && !(cause instanceof IllegalStateException)) cause = cause.getCause();
+            assertEquals("Virtual threads need Java 21 or newer, running on " + System.getProperty("java.version"),
+                    cause.getMessage());
+        });
+    }
+
+    @Test
+    void whenEnabledOnJava21_thenRunRequestsAndAsyncResponsesOnVirtualThreads() {
+        assumeTrue(Runtime.version().feature() >= 21);
+
+        runner.withPropertyValues("file-storage.virtual-threads.enabled=true").run(context -> {
+            var executor = context.getBean(ExecutorService.class);
+            assertTrue(isVirtual(executor.submit(Thread::currentThread).get()));
+
+            var connector = new Connector();
+            context.getBean(TomcatConnectorCustomizer.class).customize(connector);
+            assertSame(executor, connector.getProtocolHandler().getExecutor());
+
+            var async = new AsyncExecutorConfigurer();
+            context.getBean(VirtualThreadsConfig.class).configureAsyncSupport(async);
+            var thread = new CompletableFuture<Thread>();
+            async.executor().execute(() -> thread.complete(Thread.currentThread()));
+            assertTrue(isVirtual(thread.get()));
+        });
+    }
+
+    // Compiled for Java 11, so Thread.isVirtual is looked up at runtime as in the configuration
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    private static class AsyncExecutorConfigurer extends AsyncSupportConfigurer {
+        AsyncTaskExecutor executor() {
+            return getTaskExecutor();
+        }
+    }
+}